@@ -14,6 +14,8 @@ repositories {
 }
 
 dependencies {
+    implementation(project(":lmp-core"))
+    testImplementation("junit:junit:4.13.2")
     intellijPlatform {
         create("IC", "2024.3")
         instrumentationTools()
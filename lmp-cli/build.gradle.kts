@@ -0,0 +1,27 @@
+// The lmp command: ./gradlew :lmp-cli:installDist, then lmp-cli/build/install/lmp/bin/lmp
+plugins {
+    application
+}
+
+group = "dev.zerr"
+version = rootProject.version
+
+repositories {
+    mavenCentral()
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+dependencies {
+    implementation(project(":lmp-core"))
+}
+
+application {
+    applicationName = "lmp"
+    mainClass = "dev.zerr.lmpactions.cli.LmpCli"
+    // Class data sharing and the serial collector start fastest; memory stays bounded, so a small heap is plenty
+    applicationDefaultJvmArgs = listOf("-Xshare:auto", "-XX:+UseSerialGC", "-Xmx512m")
+}
@@ -0,0 +1,284 @@
+package dev.zerr.lmpactions.cli;
+
+import dev.zerr.lmpactions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// lmp pack|unpack|ls: streams between files and stdin/stdout so large trees never sit in memory whole
+public final class LmpCli {
+
+    private static final String USAGE = String.join("\n",
+            "Usage:",
+            "  lmp pack [options] <dir|file>...   Write the files as LMP to stdout",
+            "      -o <file>             Write to a file instead of stdout",
+            "      -j <n>                Read files with n threads (output order is unchanged)",
+            "      --exclude <glob>      Also exclude paths matching a .gitignore style glob (repeatable)",
+            "      --no-gitignore        Ignore .gitignore files",
+            "      --no-excludes         Pack every file: no default, glob or .gitignore exclusions",
+            "      --max-size <bytes>    Skip larger files (default " + LmpFileClassifier.DEFAULT_MAX_FILE_SIZE + ")",
+            "      --tokens              Print an estimated token count to stderr",
+            "      --dedup               Write files identical to an earlier one as a [FILE_SAME: path] reference",
+            "  lmp unpack [-C <dir>] [file|-]   Extract LMP from a file or stdin into dir (default .)",
+            "  lmp ls [-l] [file|-]              List the files in LMP from a file or stdin; -l adds sizes in bytes",
+            "                                    and shows a FILE_SAME copy as 'path -> original' with the original's size");
+
+    private LmpCli() {
+    }
+
+    public static void main(String[] args) {
+        int status;
+        try {
+            status = run(args);
+        } catch (UsageException e) {
+            System.err.println("lmp: " + e.getMessage());
+            System.err.println(USAGE);
+            status = 2;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("lmp: " + e.getMessage());
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    static int run(String[] args) throws IOException {
+        if (args.length == 0) {
+            throw new UsageException("missing command");
+        }
+        List<String> rest = List.of(args).subList(1, args.length);
+        switch (args[0]) {
+            case "pack":
+                return pack(rest);
+            case "unpack":
+                return unpack(rest);
+            case "ls":
+                return ls(rest);
+            case "-h":
+            case "--help":
+            case "help":
+                System.out.println(USAGE);
+                return 0;
+            default:
+                throw new UsageException("unknown command: " + args[0]);
+        }
+    }
+
+    private static int pack(List<String> args) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        List<String> globs = new ArrayList<>(LmpExclusions.DEFAULT_EXCLUDE_GLOBS);
+        String output = null;
+        int parallelism = 1;
+        boolean gitignore = true;
+        boolean excludes = true;
+        boolean tokens = false;
+        boolean dedup = false;
+        long maxSize = LmpFileClassifier.DEFAULT_MAX_FILE_SIZE;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            switch (arg) {
+                case "-o":
+                    output = value(args, ++i, arg);
+                    break;
+                case "-j":
+                    parallelism = intValue(args, ++i, arg);
+                    break;
+                case "--exclude":
+                    globs.add(value(args, ++i, arg));
+                    break;
+                case "--no-gitignore":
+                    gitignore = false;
+                    break;
+                case "--no-excludes":
+                    excludes = false;
+                    break;
+                case "--max-size":
+                    maxSize = longValue(args, ++i, arg);
+                    break;
+                case "--tokens":
+                    tokens = true;
+                    break;
+                case "--dedup":
+                    dedup = true;
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new UsageException("unknown option: " + arg);
+                    }
+                    inputs.add(Path.of(arg).toAbsolutePath().normalize());
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new UsageException("nothing to pack");
+        }
+        // Inputs inside another input are already packed with it
+        List<Path> roots = new ArrayList<>();
+        for (Path input : inputs) {
+            if (inputs.stream().noneMatch(other -> !other.equals(input) && input.startsWith(other)) && !roots.contains(input)) {
+                roots.add(input);
+            }
+        }
+
+        // Paths are relative to the working directory, or to the input itself when it lies outside of it
+        Path workingDir = Path.of("").toAbsolutePath();
+        LmpTokenEstimator estimator = tokens ? new LmpTokenEstimator(LmpTokenEstimator.Mode.APPROX_BPE) : null;
+        int filesWritten = 0;
+        long totalTokens = 0;
+        try (LmpWriter out = output != null
+                ? LmpWriter.of(Files.newOutputStream(Path.of(output)))
+                : LmpWriter.of(new FileOutputStream(FileDescriptor.out))) {
+            for (Path input : roots) {
+                boolean directory = Files.isDirectory(input);
+                Path root = input.startsWith(workingDir) ? workingDir : directory ? input : input.getParent();
+                LmpPacker packer = new LmpPacker(new LmpPackOptions()
+                        .setExclusions(excludes ? new LmpExclusions(root, LmpExclusions.DEFAULT_EXCLUDE_EXTENSIONS, globs, List.of(), gitignore) : null)
+                        .setParallelism(parallelism)
+                        .setMaxFileSize(maxSize)
+                        .setTokenEstimator(estimator)
+                        .setDeduplicate(dedup));
+                if (directory) {
+                    packer.packFolder(input, root, out);
+                } else {
+                    packer.packFile(input, root, out);
+                }
+                LmpPackReport report = packer.getReport();
+                for (LmpPackReport.SkippedFile skipped : report.getSkippedFiles()) {
+                    System.err.println("skipped " + skipped.getPath() + ": " + skipped.getReason());
+                }
+                filesWritten += report.getFilesWritten();
+                totalTokens += report.getTotalTokens();
+            }
+        }
+        if (tokens) {
+            System.err.println(filesWritten + " files, ~" + totalTokens + " tokens");
+        }
+        return 0;
+    }
+
+    private static int unpack(List<String> args) throws IOException {
+        Path destDir = Path.of(".");
+        String input = null;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.equals("-C")) {
+                destDir = Path.of(value(args, ++i, arg));
+            } else if (arg.startsWith("-") && !arg.equals("-")) {
+                throw new UsageException("unknown option: " + arg);
+            } else {
+                input = arg;
+            }
+        }
+        LmpExtractReport report;
+        // Files that fit in one mapping are mapped and copied by byte range; stdin and larger files are streamed
+        if (input != null && !input.equals("-") && Files.size(Path.of(input)) <= Integer.MAX_VALUE) {
+            report = new LmpExtractor().extract(Path.of(input), destDir);
+        } else {
+            try (Reader in = open(input)) {
+                report = new LmpExtractor(1).extract(in, destDir);
+            }
+        }
+        System.err.println(report.getTotalFiles() + " files: " + report);
+        return 0;
+    }
+
+    private static int ls(List<String> args) throws IOException {
+        boolean sizes = false;
+        String input = null;
+        for (String arg : args) {
+            if (arg.equals("-l")) {
+                sizes = true;
+            } else if (arg.startsWith("-") && !arg.equals("-")) {
+                throw new UsageException("unknown option: " + arg);
+            } else {
+                input = arg;
+            }
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false, StandardCharsets.UTF_8);
+        // A FILE_SAME block lists the size of the copy it names, so only paths and sizes are kept
+        Map<String, Long> sizeByPath = new HashMap<>();
+        try (LmpStreamReader reader = new LmpStreamReader(open(input))) {
+            String path;
+            while ((path = reader.nextFile()) != null) {
+                if (!sizes) {
+                    out.println(path);
+                } else if (reader.isReference()) {
+                    StringWriter body = new StringWriter();
+                    reader.readBody(body);
+                    String original = body.toString().lines().findFirst().orElse("").trim();
+                    Long size = sizeByPath.get(original);
+                    if (size != null) {
+                        sizeByPath.put(path, size);
+                    }
+                    out.print(size != null ? size.toString() : "?");
+                    out.print('\t');
+                    out.println(path + " -> " + original);
+                } else {
+                    ByteCounter counter = new ByteCounter();
+                    try (Writer body = new OutputStreamWriter(counter, StandardCharsets.UTF_8)) {
+                        reader.readBody(body);
+                    }
+                    sizeByPath.put(path, counter.count);
+                    out.print(counter.count);
+                    out.print('\t');
+                    out.println(path);
+                }
+            }
+        } finally {
+            out.flush();
+        }
+        return 0;
+    }
+
+    private static Reader open(String input) throws IOException {
+        InputStream in = input == null || input.equals("-") ? new FileInputStream(FileDescriptor.in) : Files.newInputStream(Path.of(input));
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static String value(List<String> args, int index, String option) {
+        if (index >= args.size()) {
+            throw new UsageException(option + " needs a value");
+        }
+        return args.get(index);
+    }
+
+    private static int intValue(List<String> args, int index, String option) {
+        try {
+            return Integer.parseInt(value(args, index, option));
+        } catch (NumberFormatException e) {
+            throw new UsageException(option + " needs a number");
+        }
+    }
+
+    private static long longValue(List<String> args, int index, String option) {
+        try {
+            return Long.parseLong(value(args, index, option));
+        } catch (NumberFormatException e) {
+            throw new UsageException(option + " needs a number");
+        }
+    }
+
+    private static class UsageException extends RuntimeException {
+        private UsageException(String message) {
+            super(message);
+        }
+    }
+
+    private static class ByteCounter extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
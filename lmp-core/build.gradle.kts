@@ -0,0 +1,43 @@
+// LMP parsing, packing and extraction with no IntelliJ dependency, shared by the plugin and the CLI
+plugins {
+    `java-library`
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+group = "dev.zerr"
+version = rootProject.version
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+// Benchmarks in src/jmh run with ./gradlew :lmp-core:jmh.
+// -PlmpCorpus=10x1KB,1000x1MB picks corpora, -PlmpBenchmarks=Parse picks benchmarks,
+// -PlmpHeap=12g is needed for the 1 GB corpora
+jmh {
+    jmhVersion = "1.37"
+    profilers.add("gc")
+    resultFormat = "JSON"
+    jvmArgs.add("-Xmx" + (findProperty("lmpHeap") ?: "4g"))
+    findProperty("lmpCorpus")?.let { benchmarkParameters.put("corpus", objects.listProperty<String>().value(it.toString().split(","))) }
+    findProperty("lmpBenchmarks")?.let { includes.add(it.toString()) }
+}
+
+// ./gradlew :lmp-core:generateCorpus -PlmpCorpus=1000x1MB -PlmpCorpusDir=build/corpus writes a tree and its LMP file
+tasks.register<JavaExec>("generateCorpus") {
+    group = "benchmark"
+    description = "Writes a synthetic project and its LMP file for benchmarking."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass = "dev.zerr.lmpactions.LmpCorpus"
+    val corpusDir = layout.projectDirectory.dir(findProperty("lmpCorpusDir")?.toString() ?: "build/corpus")
+    args(findProperty("lmpCorpus") ?: "1000x1MB", corpusDir.dir("tree").asFile.path, corpusDir.file("corpus.lmp").asFile.path)
+}
@@ -0,0 +1,131 @@
+package dev.zerr.lmpactions;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Deterministic synthetic project: source-like ASCII text spread evenly over a nested directory tree
+public class LmpCorpus {
+
+    private static final String[] WORDS = {
+            "public", "private", "static", "final", "class", "return", "if", "else", "for", "while",
+            "new", "this", "null", "true", "false", "void", "int", "long", "String", "List",
+            "Map", "value", "index", "result", "buffer", "count", "entry", "path", "content", "options",
+            "=", "==", "+", "(", ")", "{", "}", ";", ".", ",", "<", ">", "0", "1", "42", "\"text\""
+    };
+    private static final int FILES_PER_DIRECTORY = 50;
+
+    private final int files;
+    private final long totalBytes;
+
+    public LmpCorpus(int files, long totalBytes) {
+        this.files = files;
+        this.totalBytes = totalBytes;
+    }
+
+    // "1000x1MB": file count, then total content size in B, KB, MB or GB
+    public static LmpCorpus parse(String spec) {
+        String[] parts = spec.toUpperCase(Locale.ROOT).split("X", 2);
+        String size = parts[1];
+        long unit = 1;
+        if (size.endsWith("KB")) unit = 1024;
+        if (size.endsWith("MB")) unit = 1024 * 1024;
+        if (size.endsWith("GB")) unit = 1024 * 1024 * 1024;
+        String digits = size.replaceAll("[A-Z]", "");
+        return new LmpCorpus(Integer.parseInt(parts[0]), Long.parseLong(digits) * unit);
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public String path(int file) {
+        int directory = file / FILES_PER_DIRECTORY;
+        return "src/module" + (directory % 16) + "/pkg" + directory + "/File" + file + ".java";
+    }
+
+    // Every file gets an equal share, the first one also the remainder; content is ASCII so chars equal bytes
+    public String content(int file) {
+        long share = totalBytes / files + (file == 0 ? totalBytes % files : 0);
+        StringBuilder text = new StringBuilder((int) share);
+        Random random = new Random(file);
+        int lineLength = 0;
+        while (text.length() < share - 1) {
+            if (lineLength > 60 + random.nextInt(40)) {
+                text.append('\n');
+                lineLength = 0;
+                continue;
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            text.append(word).append(' ');
+            lineLength += word.length() + 1;
+        }
+        text.setLength((int) Math.max(0, share - 1));
+        if (share > 0) {
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    public String toLmp() throws IOException {
+        // Markers add roughly two paths and 30 chars per file
+        long capacity = totalBytes + (long) files * (2L * path(files - 1).length() + 32);
+        StringWriter out = new StringWriter((int) Math.min(Integer.MAX_VALUE - 8, capacity));
+        writeLmp(out);
+        return out.toString();
+    }
+
+    public void writeLmp(Writer writer) throws IOException {
+        LmpWriter out = new LmpWriter(writer);
+        for (int i = 0; i < files; i++) {
+            out.writeFile(path(i), content(i));
+        }
+        out.flush();
+    }
+
+    public void writeTree(Path root) throws IOException {
+        for (int i = 0; i < files; i++) {
+            Path file = root.resolve(path(i));
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, content(i), StandardCharsets.UTF_8);
+        }
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    // Usage: LmpCorpus <files>x<size> <output directory> [lmp file]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LmpCorpus <files>x<size> <output directory> [lmp file]");
+            System.exit(1);
+        }
+        LmpCorpus corpus = parse(args[0]);
+        corpus.writeTree(Path.of(args[1]));
+        if (args.length > 2) {
+            try (Writer out = Files.newBufferedWriter(Path.of(args[2]), StandardCharsets.UTF_8)) {
+                corpus.writeLmp(out);
+            }
+        }
+        System.out.println("Wrote " + corpus.getFiles() + " files, " + corpus.getTotalBytes() + " bytes to " + args[1]);
+    }
+}
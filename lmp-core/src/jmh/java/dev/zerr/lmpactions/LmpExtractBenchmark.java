@@ -0,0 +1,57 @@
+package dev.zerr.lmpactions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SingleShotTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LmpExtractBenchmark {
+
+    @Param({"10x1KB", "1000x1MB", "10000x100MB", "100000x1GB"})
+    public String corpus;
+
+    private String lmp;
+    private Path fresh;
+    private Path existing;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        lmp = LmpCorpus.parse(corpus).toLmp();
+        existing = Files.createTempDirectory("lmp-bench-existing");
+        new LmpExtractor().extract(lmp, existing);
+    }
+
+    // Every iteration writes into an empty directory
+    @Setup(Level.Iteration)
+    public void cleanDestination() throws IOException {
+        if (fresh != null) {
+            LmpCorpus.deleteTree(fresh);
+        }
+        fresh = Files.createTempDirectory("lmp-bench-fresh");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        LmpCorpus.deleteTree(fresh);
+        LmpCorpus.deleteTree(existing);
+    }
+
+    @Benchmark
+    public LmpExtractReport extractFresh() throws IOException {
+        return new LmpExtractor().extract(lmp, fresh);
+    }
+
+    // Same content again: measures the skip-unchanged path
+    @Benchmark
+    public LmpExtractReport extractUnchanged() throws IOException {
+        return new LmpExtractor().extract(lmp, existing);
+    }
+}
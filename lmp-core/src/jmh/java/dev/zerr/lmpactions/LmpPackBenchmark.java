@@ -0,0 +1,67 @@
+package dev.zerr.lmpactions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LmpPackBenchmark {
+
+    @Param({"10x1KB", "1000x1MB", "10000x100MB", "100000x1GB"})
+    public String corpus;
+
+    private final LmpOperator operator = new LmpOperator();
+    private final LmpChunkCache chunkCache = new LmpChunkCache(Long.MAX_VALUE);
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("lmp-bench-pack");
+        LmpCorpus.parse(corpus).writeTree(root);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        LmpCorpus.deleteTree(root);
+    }
+
+    // The whole result as one String, as the copy actions produce it
+    @Benchmark
+    public String copyFolderAsLmp() throws IOException {
+        return operator.copyFolderAsLmp(root, List.of(), List.of(), root);
+    }
+
+    @Benchmark
+    public LmpPackReport packSequential() throws IOException {
+        return pack(new LmpPackOptions());
+    }
+
+    @Benchmark
+    public LmpPackReport packParallel() throws IOException {
+        return pack(new LmpPackOptions().setParallelism(Runtime.getRuntime().availableProcessors()));
+    }
+
+    // After the first invocation every chunk comes from the cache
+    @Benchmark
+    public LmpPackReport packCached() throws IOException {
+        return pack(new LmpPackOptions().setParallelism(Runtime.getRuntime().availableProcessors()).setChunkCache(chunkCache));
+    }
+
+    private LmpPackReport pack(LmpPackOptions options) throws IOException {
+        LmpPacker packer = new LmpPacker(options);
+        try (LmpWriter out = new LmpWriter(Writer.nullWriter())) {
+            packer.packFolder(root, root, out);
+        }
+        return packer.getReport();
+    }
+}
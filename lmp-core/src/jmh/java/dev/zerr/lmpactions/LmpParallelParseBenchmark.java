@@ -0,0 +1,35 @@
+package dev.zerr.lmpactions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Scaling of LmpIndex.parse(source, threads) against the sequential parse: threads=1 is the baseline,
+// and throughput should grow close to linearly up to the number of cores
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LmpParallelParseBenchmark {
+
+    @Param({"3000x300MB", "100000x1GB"})
+    public String corpus;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private String lmp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        lmp = LmpCorpus.parse(corpus).toLmp();
+    }
+
+    @Benchmark
+    public LmpIndex index() {
+        return LmpIndex.parse(lmp, threads);
+    }
+}
@@ -0,0 +1,45 @@
+package dev.zerr.lmpactions;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Throughput is in corpora per second: multiply by the corpus size for MB/s.
+// Target for the reader: 400 MB/s or more on 3000x300MB, i.e. at least 1.33 ops/s for index
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LmpParseBenchmark {
+
+    @Param({"10x1KB", "1000x1MB", "3000x300MB", "100000x1GB"})
+    public String corpus;
+
+    private final LmpOperator operator = new LmpOperator();
+    private String lmp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        lmp = LmpCorpus.parse(corpus).toLmp();
+    }
+
+    @Benchmark
+    public LmpIndex index() {
+        return LmpIndex.parse(lmp);
+    }
+
+    @Benchmark
+    public List<String> parseFileList() {
+        return operator.parseFileList(lmp);
+    }
+
+    @Benchmark
+    public Map<String, String> parseFileContents() {
+        return operator.parseFileContents(lmp);
+    }
+}
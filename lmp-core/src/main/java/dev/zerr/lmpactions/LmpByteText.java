@@ -0,0 +1,56 @@
+package dev.zerr.lmpactions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// The bytes of a UTF-8 LMP file seen as chars, one per byte (ISO-8859-1). Markers and line ends are ASCII, and UTF-8
+// never has ASCII bytes inside a multi-byte character, so LmpReader and LmpIndex parse it unchanged and every offset
+// is a byte offset. Paths come out as one char per byte too; decodePath turns them into the real names
+final class LmpByteText implements CharSequence {
+
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    // Only absolute reads are used, so one buffer can be shared by parsing threads
+    LmpByteText(ByteBuffer bytes) {
+        this(bytes, 0, bytes.limit());
+    }
+
+    private LmpByteText(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    static String decodePath(String path) {
+        return new String(path.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+    }
+
+    // The bytes of [start, end) as a buffer of their own
+    ByteBuffer slice(int start, int end) {
+        return bytes.slice(offset + start, end - start);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new LmpByteText(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] copy = new byte[length];
+        bytes.get(offset, copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+}
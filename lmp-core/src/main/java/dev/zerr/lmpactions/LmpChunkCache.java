@@ -0,0 +1,102 @@
+package dev.zerr.lmpactions;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Rendered [FILE_START]...[FILE_END] blocks, bounded by their total length and evicted least recently used first
+public class LmpChunkCache {
+
+    public static final long DEFAULT_MAX_CHARS = 32L * 1024 * 1024;
+
+    private final long maxChars;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long chars;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LmpChunkCache() {
+        this(DEFAULT_MAX_CHARS);
+    }
+
+    public LmpChunkCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    // The chunk rendered for key, or null if it was never rendered or the file changed since (different stamp or size)
+    public synchronized String get(String key, long stamp, long size) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.stamp != stamp || entry.size != size) {
+            entries.remove(key);
+            chars -= entry.text.length();
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.text;
+    }
+
+    public synchronized void put(String key, long stamp, long size, String text) {
+        if (text.length() > maxChars) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(stamp, size, text));
+        if (previous != null) {
+            chars -= previous.text.length();
+        }
+        chars += text.length();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (chars > maxChars) {
+            chars -= eldest.next().text.length();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        chars = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Total length of the cached chunks
+    public synchronized long getChars() {
+        return chars;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return entries.size() + " chunks, " + chars + " chars, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+
+    private static class Entry {
+        private final long stamp;
+        private final long size;
+        private final String text;
+
+        private Entry(long stamp, long size, String text) {
+            this.stamp = stamp;
+            this.size = size;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package dev.zerr.lmpactions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Last known content hash of files on disk, so a changed file can be told apart without reading it
+public class LmpContentHashes {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    // {stamp, size, hash} by key
+    private final Map<String, long[]> entries;
+
+    public LmpContentHashes() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public LmpContentHashes(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // Hash recorded for the file at key with this stamp and size, or -1
+    public synchronized long get(String key, long stamp, long size) {
+        long[] entry = entries.get(key);
+        return entry != null && entry[0] == stamp && entry[1] == size ? entry[2] : -1;
+    }
+
+    public synchronized void put(String key, long stamp, long size, long hash) {
+        entries.put(key, new long[]{stamp, size, hash});
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
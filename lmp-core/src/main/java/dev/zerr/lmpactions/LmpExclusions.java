@@ -0,0 +1,262 @@
+package dev.zerr.lmpactions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LmpExclusions {
+
+    public static final List<String> DEFAULT_EXCLUDE_EXTENSIONS = List.of(
+            ".exe", ".dll", ".so", ".bin", ".class", ".jar", ".png", ".jpg", ".jpeg", ".gif", ".svg", ".ico", ".mp3", ".mp4", ".wav", ".zip", ".tar", ".gz", ".7z", ".rar", ".iso"
+    );
+    // .gitignore syntax, relative to the root
+    public static final List<String> DEFAULT_EXCLUDE_GLOBS = List.of(
+            "/node_modules/", "/.git/", "/.idea/", "/.vscode/", "/__pycache__/",
+            // Left behind when an extraction is killed before it cleans up
+            LmpExtractor.STAGING_PREFIX + "*/"
+    );
+
+    private static final String GITIGNORE = ".gitignore";
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    private final Path root;
+    private final Set<String> extensions = new HashSet<>();
+    private final Rule[] globRules;
+    private final List<Pattern> patterns;
+    private final boolean useGitignore;
+    // .gitignore rules in effect for each directory: its parent's rules followed by its own
+    private final Map<Path, Rule[]> gitignoreRules = new ConcurrentHashMap<>();
+
+    public LmpExclusions(Path root, Collection<String> extensions, List<String> globs, List<Pattern> patterns, boolean useGitignore) {
+        this.root = root;
+        for (String extension : extensions) {
+            this.extensions.add(extension.toLowerCase());
+        }
+        List<Rule> rules = new ArrayList<>();
+        for (String glob : globs) {
+            Rule rule = Rule.parse(glob, "");
+            if (rule != null) rules.add(rule);
+        }
+        this.globRules = rules.toArray(NO_RULES);
+        this.patterns = patterns;
+        this.useGitignore = useGitignore;
+    }
+
+    public static LmpExclusions defaults(Path root) {
+        return new LmpExclusions(root, DEFAULT_EXCLUDE_EXTENSIONS, DEFAULT_EXCLUDE_GLOBS, List.of(), true);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public boolean isExcludedFile(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0 && !extensions.isEmpty() && extensions.contains(name.substring(dot).toLowerCase())) {
+            return true;
+        }
+        String relPath = relativize(file);
+        return relPath != null && isExcluded(file.getParent(), relPath, false);
+    }
+
+    // Whether the walk can skip dir and everything below it
+    public boolean isExcludedDirectory(Path dir) {
+        String relPath = relativize(dir);
+        return relPath != null && !relPath.isEmpty() && isExcluded(dir.getParent(), relPath, true);
+    }
+
+    // Like isExcludedDirectory, but also true when any directory between the root and dir is excluded
+    public boolean isExcludedTree(Path dir) {
+        for (Path current = dir; current != null && current.startsWith(root); current = current.getParent()) {
+            if (isExcludedDirectory(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExcluded(Path parent, String relPath, boolean isDirectory) {
+        for (Rule rule : globRules) {
+            if (!rule.negated && rule.matches(relPath, isDirectory)) {
+                return true;
+            }
+        }
+        if (useGitignore && parent != null) {
+            // Last matching rule wins; deeper .gitignore files come later
+            Rule[] rules = gitignoreRulesFor(parent);
+            for (int i = rules.length - 1; i >= 0; i--) {
+                if (rules[i].matches(relPath, isDirectory)) {
+                    if (!rules[i].negated) return true;
+                    break;
+                }
+            }
+        }
+        if (!patterns.isEmpty()) {
+            String candidate = isDirectory ? relPath + "/" : relPath;
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(candidate).find()) return true;
+            }
+        }
+        return false;
+    }
+
+    private Rule[] gitignoreRulesFor(Path dir) {
+        Rule[] cached = gitignoreRules.get(dir);
+        if (cached != null) {
+            return cached;
+        }
+        String relDir = relativize(dir);
+        if (relDir == null) {
+            return NO_RULES;
+        }
+        Rule[] inherited = relDir.isEmpty() ? NO_RULES : gitignoreRulesFor(dir.getParent());
+        List<Rule> own = readGitignore(dir, relDir.isEmpty() ? "" : relDir + "/");
+        Rule[] rules = inherited;
+        if (!own.isEmpty()) {
+            rules = Arrays.copyOf(inherited, inherited.length + own.size());
+            for (int i = 0; i < own.size(); i++) {
+                rules[inherited.length + i] = own.get(i);
+            }
+        }
+        Rule[] previous = gitignoreRules.putIfAbsent(dir, rules);
+        return previous != null ? previous : rules;
+    }
+
+    private List<Rule> readGitignore(Path dir, String base) {
+        Path file = dir.resolve(GITIGNORE);
+        if (!Files.isRegularFile(file)) {
+            return List.of();
+        }
+        List<Rule> rules = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                Rule rule = Rule.parse(line, base);
+                if (rule != null) rules.add(rule);
+            }
+        } catch (IOException e) {
+            // An unreadable .gitignore excludes nothing
+        }
+        return rules;
+    }
+
+    // Path relative to the root with '/' separators, or null when outside of it
+    private String relativize(Path path) {
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final boolean negated;
+        private final boolean directoryOnly;
+        private final String base;
+
+        private Rule(Pattern pattern, boolean negated, boolean directoryOnly, String base) {
+            this.pattern = pattern;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.base = base;
+        }
+
+        private boolean matches(String relPath, boolean isDirectory) {
+            if (directoryOnly && !isDirectory) return false;
+            if (!relPath.startsWith(base)) return false;
+            Matcher matcher = pattern.matcher(relPath);
+            matcher.region(base.length(), relPath.length());
+            return matcher.matches();
+        }
+
+        // One .gitignore line; base is the directory of the .gitignore relative to the root ("" or "a/b/")
+        static Rule parse(String line, String base) {
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) end--;
+            String glob = line.substring(0, end);
+            if (glob.isEmpty() || glob.startsWith("#")) {
+                return null;
+            }
+            boolean negated = false;
+            if (glob.startsWith("!")) {
+                negated = true;
+                glob = glob.substring(1);
+            } else if (glob.startsWith("\\!") || glob.startsWith("\\#")) {
+                glob = glob.substring(1);
+            }
+            boolean directoryOnly = glob.endsWith("/");
+            if (directoryOnly) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            // A slash anywhere but at the end anchors the pattern to the .gitignore directory
+            boolean anchored = glob.contains("/");
+            if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            if (glob.isEmpty()) {
+                return null;
+            }
+            String regex = globToRegex(glob);
+            return new Rule(Pattern.compile(anchored ? regex : "(?:.*/)?" + regex), negated, directoryOnly, base);
+        }
+
+        private static String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int length = glob.length();
+            int i = 0;
+            while (i < length) {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    boolean doubleStar = i + 1 < length && glob.charAt(i + 1) == '*';
+                    boolean segmentStart = i == 0 || glob.charAt(i - 1) == '/';
+                    if (doubleStar && segmentStart && i + 2 == length) {
+                        regex.append(".*");
+                        i += 2;
+                        continue;
+                    }
+                    if (doubleStar && segmentStart && glob.charAt(i + 2) == '/') {
+                        regex.append("(?:.*/)?");
+                        i += 3;
+                        continue;
+                    }
+                    regex.append("[^/]*");
+                    while (i < length && glob.charAt(i) == '*') i++;
+                    continue;
+                }
+                if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                    int close = glob.indexOf(']', i + 2);
+                    String set = glob.substring(i + 1, close);
+                    regex.append('[');
+                    if (set.startsWith("!")) {
+                        regex.append('^');
+                        set = set.substring(1);
+                    }
+                    regex.append(set.replace("\\", "\\\\").replace("[", "\\["));
+                    regex.append(']');
+                    i = close;
+                } else if (c == '\\' && i + 1 < length) {
+                    appendLiteral(regex, glob.charAt(++i));
+                } else {
+                    appendLiteral(regex, c);
+                }
+                i++;
+            }
+            return regex.toString();
+        }
+
+        private static void appendLiteral(StringBuilder regex, char c) {
+            if ("\\.[]{}()<>*+-=!?^$|".indexOf(c) >= 0) {
+                regex.append('\\');
+            }
+            regex.append(c);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dev.zerr.lmpactions;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LmpExtractReport {
+
+    private final List<String> created = new ArrayList<>();
+    private final List<String> modified = new ArrayList<>();
+    private final List<String> unchanged = new ArrayList<>();
+    private final List<Path> changedRoots = new ArrayList<>();
+
+    synchronized void fileCreated(String path) {
+        created.add(path);
+    }
+
+    synchronized void fileModified(String path) {
+        modified.add(path);
+    }
+
+    synchronized void fileUnchanged(String path) {
+        unchanged.add(path);
+    }
+
+    synchronized void rootChanged(Path root) {
+        changedRoots.add(root);
+    }
+
+    public synchronized List<String> getCreated() {
+        return Collections.unmodifiableList(new ArrayList<>(created));
+    }
+
+    public synchronized List<String> getModified() {
+        return Collections.unmodifiableList(new ArrayList<>(modified));
+    }
+
+    // Files whose content already matched; they were not touched
+    public synchronized List<String> getUnchanged() {
+        return Collections.unmodifiableList(new ArrayList<>(unchanged));
+    }
+
+    // Written files plus the topmost directories created for them: what a file system refresh needs to cover
+    public synchronized List<Path> getChangedRoots() {
+        return Collections.unmodifiableList(new ArrayList<>(changedRoots));
+    }
+
+    public synchronized int getFilesWritten() {
+        return created.size() + modified.size();
+    }
+
+    public synchronized int getTotalFiles() {
+        return created.size() + modified.size() + unchanged.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return created.size() + " created, " + modified.size() + " modified, " + unchanged.size() + " unchanged";
+    }
+}
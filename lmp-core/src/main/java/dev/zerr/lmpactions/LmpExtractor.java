@@ -0,0 +1,661 @@
+package dev.zerr.lmpactions;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+public class LmpExtractor {
+
+    public interface Progress {
+        boolean isCanceled();
+
+        void fileExtracted(String path, int done, int total);
+    }
+
+    private static final Progress NO_PROGRESS = new Progress() {
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+
+        @Override
+        public void fileExtracted(String path, int done, int total) {
+        }
+    };
+
+    private static final long CANCEL_POLL_MS = 100;
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+    private static final long TERMINATION_TIMEOUT_MS = 5000;
+    static final String STAGING_PREFIX = ".lmp-staging-";
+
+    private final int parallelism;
+    private final LmpContentHashes hashes;
+    private final LmpStats stats = new LmpStats("extract");
+
+    public LmpExtractor() {
+        this((LmpContentHashes) null);
+    }
+
+    public LmpExtractor(LmpContentHashes hashes) {
+        this(Math.min(Runtime.getRuntime().availableProcessors(), 8), hashes);
+    }
+
+    public LmpExtractor(int parallelism) {
+        this(parallelism, null);
+    }
+
+    // Hashes remembered from earlier extractions let a changed file be detected without reading it
+    public LmpExtractor(int parallelism, LmpContentHashes hashes) {
+        this.parallelism = Math.max(1, parallelism);
+        this.hashes = hashes;
+    }
+
+    // Counters and timings of every extraction run by this extractor; callers call finish
+    public LmpStats getStats() {
+        return stats;
+    }
+
+    public LmpExtractReport extract(CharSequence lmpContent, Path destDir) throws IOException {
+        return extract(lmpContent, destDir, NO_PROGRESS);
+    }
+
+    public LmpExtractReport extract(CharSequence lmpContent, Path destDir, Progress progress) throws IOException {
+        LmpExtractReport report = new LmpExtractReport();
+        // Parse once and validate before anything is written
+        LmpIndex index;
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.PARSE)) {
+            index = LmpIndex.parse(lmpContent, parallelism);
+        }
+        stats.bytesRead(lmpContent.length());
+        if (index.getUnclosedPath() != null) {
+            throw new IOException("Unclosed file declaration: " + index.getUnclosedPath());
+        }
+        return extract(index, destDir, progress, report, null);
+    }
+
+    public LmpExtractReport extract(Path lmpFile, Path destDir) throws IOException {
+        return extract(lmpFile, destDir, NO_PROGRESS);
+    }
+
+    // Maps the file instead of decoding it: markers are found in the UTF-8 bytes and bodies are copied to their
+    // staged files by byte range, so no char copy of the input is ever made. Limited to 2 GB, the size of one mapping
+    public LmpExtractReport extract(Path lmpFile, Path destDir, Progress progress) throws IOException {
+        LmpExtractReport report = new LmpExtractReport();
+        try (FileChannel channel = FileChannel.open(lmpFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("LMP file too large to map (over 2 GB): " + lmpFile);
+            }
+            LmpByteText text = new LmpByteText(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            LmpIndex index;
+            try (LmpStats.Span ignored = stats.span(LmpStats.Phase.PARSE)) {
+                index = LmpIndex.parse(text, parallelism);
+            }
+            stats.bytesRead(size);
+            if (index.getUnclosedPath() != null) {
+                throw new IOException("Unclosed file declaration: " + LmpByteText.decodePath(index.getUnclosedPath()));
+            }
+            return extract(index, destDir, progress, report, channel);
+        }
+    }
+
+    // Bodies come from the index source, or by byte range from 'channel' when the source is its mapped LmpByteText
+    private LmpExtractReport extract(LmpIndex index, Path destDir, Progress progress, LmpExtractReport report,
+                                     FileChannel channel) throws IOException {
+        List<LmpIndex.Entry> entries = new ArrayList<>(index.getFileEntries());
+        stats.filesScanned(entries.size());
+        if (entries.isEmpty()) {
+            return report;
+        }
+        for (LmpIndex.Entry entry : entries) {
+            resolveTarget(destDir, channel != null ? LmpByteText.decodePath(entry.getPath()) : entry.getPath());
+        }
+
+        Files.createDirectories(destDir);
+        // Staged next to the output, on the same file system, so committing is a series of renames
+        Path staging = Files.createTempDirectory(destDir, STAGING_PREFIX);
+        try {
+            StagedFile[] staged;
+            try (LmpStats.Span ignored = stats.span(LmpStats.Phase.STAGE)) {
+                staged = stage(index, entries, destDir, staging, progress, report, channel);
+            }
+            try (LmpStats.Span ignored = stats.span(LmpStats.Phase.COMMIT)) {
+                commit(staged, staging, report);
+            }
+            return report;
+        } finally {
+            deleteRecursively(staging);
+        }
+    }
+
+    // Streams the input straight into the staging directory, so memory stays bounded however large it is
+    public LmpExtractReport extract(Reader in, Path destDir) throws IOException {
+        LmpExtractReport report = new LmpExtractReport();
+        Files.createDirectories(destDir);
+        Path staging = Files.createTempDirectory(destDir, STAGING_PREFIX);
+        try {
+            // Same rules as the indexed extract: first appearance gives the order, the last block for a path wins
+            Map<String, Integer> slots = new LinkedHashMap<>();
+            Map<Integer, Long> hashesBySlot = new HashMap<>();
+            // Slots whose last block is a FILE_PATCH
+            Set<Integer> patches = new HashSet<>();
+            // Slots whose last block is a FILE_SAME, with the path it names
+            Map<Integer, String> references = new HashMap<>();
+            // Parsing and staging are one pass here, timed as staging
+            try (LmpStreamReader reader = new LmpStreamReader(in);
+                 LmpStats.Span ignored = stats.span(LmpStats.Phase.STAGE)) {
+                String path;
+                while ((path = reader.nextFile()) != null) {
+                    resolveTarget(destDir, path);
+                    int slot = slots.computeIfAbsent(path, key -> slots.size());
+                    if (reader.isPatch()) {
+                        patches.add(slot);
+                    } else {
+                        patches.remove(slot);
+                    }
+                    references.remove(slot);
+                    if (reader.isReference()) {
+                        // A path, so small enough to hold; staged as is in case it names no usable file
+                        StringWriter body = new StringWriter();
+                        reader.readBody(body);
+                        String originalPath = body.toString().lines().findFirst().orElse("").trim();
+                        if (!originalPath.isEmpty()) {
+                            references.put(slot, originalPath);
+                        }
+                        byte[] content = body.toString().getBytes(StandardCharsets.UTF_8);
+                        Files.write(staging.resolve(slot + ".tmp"), content);
+                        hashesBySlot.put(slot, hash(content));
+                        continue;
+                    }
+                    CRC32C crc = new CRC32C();
+                    try (Writer out = new OutputStreamWriter(new CheckedOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(staging.resolve(slot + ".tmp"))), crc), StandardCharsets.UTF_8)) {
+                        reader.readBody(out);
+                    }
+                    hashesBySlot.put(slot, crc.getValue());
+                }
+            }
+            stats.filesScanned(slots.size());
+            resolveReferences(slots, patches, references, hashesBySlot, staging);
+            applyPatches(slots, patches, hashesBySlot, staging, destDir);
+
+            StagedFile[] staged = new StagedFile[slots.size()];
+            for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+                int slot = entry.getValue();
+                Path target = resolveTarget(destDir, entry.getKey());
+                Path file = staging.resolve(slot + ".tmp");
+                long hash = hashesBySlot.get(slot);
+                long size = Files.size(file);
+                stats.bytesWritten(size);
+                BasicFileAttributes attrs = readAttributes(target);
+                if (attrs != null && isUnchanged(target, attrs, size, hash, file, null)) {
+                    report.fileUnchanged(entry.getKey());
+                    stats.fileSkipped();
+                } else {
+                    staged[slot] = new StagedFile(entry.getKey(), target, file, attrs != null, hash);
+                }
+            }
+            try (LmpStats.Span ignored = stats.span(LmpStats.Phase.COMMIT)) {
+                commit(staged, staging, report);
+            }
+            return report;
+        } finally {
+            deleteRecursively(staging);
+        }
+    }
+
+    // Duplicates were staged as the path in their FILE_SAME block; they take the staged content of the file it names.
+    // Same rules as LmpIndex.getOriginal: references to a missing file, to itself, to another reference or to a patch
+    // stay as they are
+    private static void resolveReferences(Map<String, Integer> slots, Set<Integer> patches, Map<Integer, String> references,
+                                          Map<Integer, Long> hashesBySlot, Path staging) throws IOException {
+        for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+            String originalPath = references.get(entry.getValue());
+            Integer originalSlot = originalPath != null ? slots.get(originalPath) : null;
+            if (originalSlot == null || originalPath.equals(entry.getKey()) || patches.contains(originalSlot)
+                    || references.containsKey(originalSlot)) {
+                continue;
+            }
+            Files.copy(staging.resolve(originalSlot + ".tmp"), staging.resolve(entry.getValue() + ".tmp"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            hashesBySlot.put(entry.getValue(), hashesBySlot.get(originalSlot));
+        }
+    }
+
+    // Patches were staged as their hunks; they are replaced by the patched destination file
+    private static void applyPatches(Map<String, Integer> slots, Set<Integer> patches, Map<Integer, Long> hashesBySlot,
+                                     Path staging, Path destDir) throws IOException {
+        for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+            int slot = entry.getValue();
+            if (!patches.contains(slot)) {
+                continue;
+            }
+            Path file = staging.resolve(slot + ".tmp");
+            byte[] content = patch(entry.getKey(), Files.readString(file), resolveTarget(destDir, entry.getKey()))
+                    .getBytes(StandardCharsets.UTF_8);
+            Files.write(file, content);
+            hashesBySlot.put(slot, hash(content));
+        }
+    }
+
+    // Block paths come from model output: one that leaves destDir, through ".." or by being absolute, fails the whole
+    // extraction before anything is staged
+    static Path resolveTarget(Path destDir, String path) throws IOException {
+        Path dir = destDir.toAbsolutePath().normalize();
+        Path target;
+        try {
+            target = dir.resolve(path).normalize();
+        } catch (InvalidPathException e) {
+            throw new IOException("Invalid path: " + path, e);
+        }
+        if (!target.startsWith(dir) || target.equals(dir)) {
+            throw new IOException("Path outside the output directory: " + path);
+        }
+        return target;
+    }
+
+    // Fails the whole extraction when a hunk has no match, before anything is committed
+    private static String patch(String path, CharSequence hunks, Path target) throws IOException {
+        boolean exists = Files.isRegularFile(target);
+        try {
+            return LmpPatch.parse(hunks).apply(exists ? Files.readString(target) : "");
+        } catch (IOException e) {
+            throw new IOException("Patch for " + path + " does not apply: " + e.getMessage()
+                    + (exists ? "" : " (the file does not exist)"), e);
+        }
+    }
+
+    // Writes every changed file into the staging directory; the destination is not touched yet
+    private StagedFile[] stage(LmpIndex index, List<LmpIndex.Entry> entries, Path destDir, Path staging,
+                               Progress progress, LmpExtractReport report, FileChannel channel) throws IOException {
+        StagedFile[] staged = new StagedFile[entries.size()];
+        int threads = Math.min(parallelism, entries.size());
+        if (threads == 1) {
+            for (int i = 0; i < entries.size(); i++) {
+                checkCanceled(progress);
+                staged[i] = stageEntry(index, entries.get(i), i, destDir, staging, report, channel);
+                progress.fileExtracted(pathOf(entries.get(i), channel), i + 1, entries.size());
+            }
+            return staged;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "LMP Extract");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+            for (int i = 0; i < entries.size(); i++) {
+                int slot = i;
+                LmpIndex.Entry entry = entries.get(i);
+                completion.submit(() -> {
+                    if (progress.isCanceled()) {
+                        throw new CancellationException();
+                    }
+                    staged[slot] = stageEntry(index, entry, slot, destDir, staging, report, channel);
+                    return pathOf(entry, channel);
+                });
+            }
+            int done = 0;
+            while (done < entries.size()) {
+                checkCanceled(progress);
+                Future<String> finished = completion.poll(CANCEL_POLL_MS, TimeUnit.MILLISECONDS);
+                if (finished != null) {
+                    progress.fileExtracted(getResult(finished), ++done, entries.size());
+                }
+            }
+            return staged;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Extraction interrupted");
+        } finally {
+            executor.shutdownNow();
+            // The staging directory is deleted next; no writer may still be running
+            awaitTermination(executor);
+        }
+    }
+
+    // Identical files are left alone so their timestamps, and the IDE's indexes and watchers, are not disturbed
+    private StagedFile stageEntry(LmpIndex index, LmpIndex.Entry entry, int slot, Path destDir, Path staging,
+                                  LmpExtractReport report, FileChannel channel) throws IOException {
+        if (channel != null) {
+            return stageMapped(index, entry, slot, destDir, staging, report, channel);
+        }
+        Path target = resolveTarget(destDir, entry.getPath());
+        CharSequence text = entry.isPatch() ? patch(entry.getPath(), index.getContent(entry), target) : index.getContent(entry);
+        return stageContent(entry.getPath(), target, text.toString().getBytes(StandardCharsets.UTF_8), slot, staging, report);
+    }
+
+    private StagedFile stageContent(String path, Path target, byte[] content, int slot, Path staging,
+                                    LmpExtractReport report) throws IOException {
+        stats.bufferUsed(content.length);
+        long hash = hash(content);
+        BasicFileAttributes attrs = readAttributes(target);
+        if (attrs != null && isUnchanged(target, attrs, content.length, hash, null, ByteBuffer.wrap(content))) {
+            report.fileUnchanged(path);
+            stats.fileSkipped();
+            return null;
+        }
+        Path file = staging.resolve(slot + ".tmp");
+        Files.write(file, content);
+        stats.bytesWritten(content.length);
+        return new StagedFile(path, target, file, attrs != null, hash);
+    }
+
+    // Verbatim bodies go from the LMP file to the staged file with transferTo; bodies that need line ending
+    // normalization are streamed through byte by byte. Only patches are decoded
+    private StagedFile stageMapped(LmpIndex index, LmpIndex.Entry entry, int slot, Path destDir, Path staging,
+                                   LmpExtractReport report, FileChannel channel) throws IOException {
+        String path = LmpByteText.decodePath(entry.getPath());
+        Path target = resolveTarget(destDir, path);
+        LmpByteText text = (LmpByteText) index.getSource();
+        if (entry.isPatch()) {
+            String hunks = new String(index.getContent(entry).toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+            return stageContent(path, target, patch(path, hunks, target).getBytes(StandardCharsets.UTF_8), slot, staging, report);
+        }
+
+        LmpIndex.Entry original = index.getOriginal(entry);
+        LmpIndex.Entry body = original != null ? original : entry;
+        BasicFileAttributes attrs = readAttributes(target);
+        Path file = staging.resolve(slot + ".tmp");
+        long length;
+        long hash;
+        if (body.isBodyVerbatim()) {
+            ByteBuffer content = text.slice(body.getBodyStart(), body.getBodyEnd());
+            length = content.remaining();
+            hash = hash(content);
+            if (attrs != null && isUnchanged(target, attrs, length, hash, null, content)) {
+                report.fileUnchanged(path);
+                stats.fileSkipped();
+                return null;
+            }
+            transfer(channel, body.getBodyStart(), length, file);
+        } else {
+            CRC32C crc = new CRC32C();
+            try (OutputStream out = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(file)), crc)) {
+                LmpReader.writeBody(text, body.getBodyStart(), body.getBodyEnd(), false, new ByteAppendable(out));
+            }
+            length = Files.size(file);
+            hash = crc.getValue();
+            // The staged file is left for the staging directory cleanup
+            if (attrs != null && isUnchanged(target, attrs, length, hash, file, null)) {
+                report.fileUnchanged(path);
+                stats.fileSkipped();
+                return null;
+            }
+        }
+        stats.bytesWritten(length);
+        return new StagedFile(path, target, file, attrs != null, hash);
+    }
+
+    private static void transfer(FileChannel source, long position, long count, Path file) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (count > 0) {
+                long sent = source.transferTo(position, count, out);
+                if (sent <= 0) {
+                    throw new IOException("LMP file changed while extracting");
+                }
+                position += sent;
+                count -= sent;
+            }
+        }
+    }
+
+    private static String pathOf(LmpIndex.Entry entry, FileChannel channel) {
+        return channel != null ? LmpByteText.decodePath(entry.getPath()) : entry.getPath();
+    }
+
+    // Moves staged files into place as one batch; the first failure restores every file and directory touched so far
+    private void commit(StagedFile[] staged, Path staging, LmpExtractReport report) throws IOException {
+        List<Path> createdDirectories = new ArrayList<>();
+        List<StagedFile> committed = new ArrayList<>();
+        try {
+            for (StagedFile file : staged) {
+                if (file == null) {
+                    continue;
+                }
+                createParents(file.target.getParent(), createdDirectories);
+                if (file.existed) {
+                    file.backup = staging.resolve(file.file.getFileName() + ".bak");
+                    backup(file.target, file.backup);
+                    copyPermissions(file.target, file.file);
+                }
+                move(file.file, file.target);
+                committed.add(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            rollback(committed, createdDirectories, e);
+            throw e;
+        }
+
+        Set<Path> newDirectories = new HashSet<>(createdDirectories);
+        for (Path directory : createdDirectories) {
+            if (!newDirectories.contains(directory.getParent())) {
+                report.rootChanged(directory);
+            }
+        }
+        for (StagedFile file : committed) {
+            if (file.existed) {
+                report.fileModified(file.path);
+            } else {
+                report.fileCreated(file.path);
+            }
+            if (!newDirectories.contains(file.target.getParent())) {
+                report.rootChanged(file.target);
+            }
+            remember(file.target, readAttributes(file.target), file.hash);
+        }
+    }
+
+    private void rollback(List<StagedFile> committed, List<Path> createdDirectories, Exception failure) {
+        for (int i = committed.size() - 1; i >= 0; i--) {
+            StagedFile file = committed.get(i);
+            try {
+                if (file.existed) {
+                    move(file.backup, file.target);
+                } else {
+                    Files.deleteIfExists(file.target);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        for (int i = createdDirectories.size() - 1; i >= 0; i--) {
+            try {
+                Files.deleteIfExists(createdDirectories.get(i));
+            } catch (IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private static void createParents(Path directory, List<Path> createdDirectories) throws IOException {
+        if (directory == null || Files.isDirectory(directory)) {
+            return;
+        }
+        createParents(directory.getParent(), createdDirectories);
+        Files.createDirectory(directory);
+        createdDirectories.add(directory);
+    }
+
+    // A hard link keeps the original without copying it; file systems without links get a copy
+    private static void backup(Path target, Path backup) throws IOException {
+        try {
+            Files.createLink(backup, target);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(target, backup, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    // The replacement keeps the executable bit and other permissions of the file it replaces
+    private static void copyPermissions(Path from, Path to) {
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (IOException | UnsupportedOperationException e) {
+            // Not a POSIX file system
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // Best effort: a leftover staging directory holds no project state
+                }
+            });
+        } catch (IOException e) {
+            // Same
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            executor.awaitTermination(TERMINATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Cheapest check first: length, then the remembered hash, then a full compare
+    // The new content is either in memory, or mapped, or in a staged file
+    private boolean isUnchanged(Path file, BasicFileAttributes attrs, long length, long hash, Path staged, ByteBuffer content) throws IOException {
+        if (!attrs.isRegularFile() || attrs.size() != length) {
+            return false;
+        }
+        long knownHash = hashes != null ? hashes.get(file.toString(), LmpSourceFile.stamp(attrs), attrs.size()) : -1;
+        if (knownHash != -1 && knownHash != hash) {
+            return false;
+        }
+        if (content != null ? !hasContent(file, content) : Files.mismatch(file, staged) != -1) {
+            return false;
+        }
+        remember(file, attrs, hash);
+        return true;
+    }
+
+    private void remember(Path file, BasicFileAttributes attrs, long hash) {
+        if (hashes != null && attrs != null) {
+            hashes.put(file.toString(), LmpSourceFile.stamp(attrs), attrs.size(), hash);
+        }
+    }
+
+    private static boolean hasContent(Path file, ByteBuffer content) throws IOException {
+        int length = content.remaining();
+        byte[] buffer = new byte[Math.min(COMPARE_BUFFER_SIZE, Math.max(length, 1))];
+        try (InputStream in = Files.newInputStream(file)) {
+            int offset = 0;
+            int read;
+            while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                if (offset + read > length
+                        || ByteBuffer.wrap(buffer, 0, read).mismatch(content.slice(content.position() + offset, read)) != -1) {
+                    return false;
+                }
+                offset += read;
+            }
+            return offset == length;
+        }
+    }
+
+    private static long hash(byte[] content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static long hash(ByteBuffer content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content.duplicate());
+        return crc.getValue();
+    }
+
+    private static BasicFileAttributes readAttributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String getResult(Future<String> finished) throws IOException, InterruptedException {
+        try {
+            return finished.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private void checkCanceled(Progress progress) {
+        if (progress.isCanceled()) {
+            throw new CancellationException("Extraction canceled");
+        }
+    }
+
+    // Writes the chars of an LmpByteText back as the bytes they stand for
+    private static final class ByteAppendable implements Appendable {
+        private final OutputStream out;
+
+        private ByteAppendable(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) throws IOException {
+            return append(text, 0, text.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) throws IOException {
+            for (int i = start; i < end; i++) {
+                out.write(text.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            out.write(c);
+            return this;
+        }
+    }
+
+    private static class StagedFile {
+        private final String path;
+        private final Path target;
+        private final Path file;
+        private final boolean existed;
+        private final long hash;
+        // The replaced file, kept until the whole batch is committed
+        private Path backup;
+
+        private StagedFile(String path, Path target, Path file, boolean existed, long hash) {
+            this.path = path;
+            this.target = target;
+            this.file = file;
+            this.existed = existed;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package dev.zerr.lmpactions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class LmpFileClassifier {
+
+    // A guard against generated dumps and data files; large sources and lockfiles stay well below it
+    public static final long DEFAULT_MAX_FILE_SIZE = 32L * 1024 * 1024;
+
+    private static final int SNIFF_SIZE = 8192;
+    // Share of control characters above which a non UTF-8 file is treated as binary
+    private static final double MAX_CONTROL_RATIO = 0.1;
+    private static final Charset LEGACY_CHARSET = Charset.isSupported("windows-1252")
+            ? Charset.forName("windows-1252")
+            : StandardCharsets.ISO_8859_1;
+
+    private final long maxFileSize;
+
+    public LmpFileClassifier(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    // Decides from the size and the first few KB only; the rest of the file is never read here
+    public Classification classify(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxFileSize) {
+                return tooLarge(size);
+            }
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(SNIFF_SIZE, size));
+            while (head.hasRemaining() && channel.read(head) > 0) {
+                // Fill the sniff buffer
+            }
+            head.flip();
+            return classify(head, head.limit() >= size);
+        }
+    }
+
+    // Same decision for content already in memory
+    public Classification classify(byte[] content) {
+        if (content.length > maxFileSize) {
+            return tooLarge(content.length);
+        }
+        // Whole content is at hand, but the decision only looks at the same window as for files on disk
+        return classify(ByteBuffer.wrap(content, 0, Math.min(SNIFF_SIZE, content.length)), content.length <= SNIFF_SIZE);
+    }
+
+    // Only the size limit, e.g. for text that is already decoded such as an open editor document
+    public Classification classifySize(long size) {
+        return size > maxFileSize ? tooLarge(size) : Classification.text(StandardCharsets.UTF_8);
+    }
+
+    private Classification tooLarge(long size) {
+        return Classification.skip("larger than " + formatSize(maxFileSize) + " (" + formatSize(size) + ")");
+    }
+
+    static Classification classify(ByteBuffer head, boolean complete) {
+        int length = head.remaining();
+        if (length >= 3 && (head.get(0) & 0xFF) == 0xEF && (head.get(1) & 0xFF) == 0xBB && (head.get(2) & 0xFF) == 0xBF) {
+            return Classification.text(StandardCharsets.UTF_8);
+        }
+        if (length >= 2 && (head.get(0) & 0xFF) == 0xFE && (head.get(1) & 0xFF) == 0xFF) {
+            return Classification.text(StandardCharsets.UTF_16BE);
+        }
+        if (length >= 2 && (head.get(0) & 0xFF) == 0xFF && (head.get(1) & 0xFF) == 0xFE) {
+            return Classification.text(StandardCharsets.UTF_16LE);
+        }
+
+        int controls = 0;
+        for (int i = 0; i < length; i++) {
+            int b = head.get(i) & 0xFF;
+            if (b == 0) {
+                return Classification.skip("binary content (NUL byte)");
+            }
+            if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') || b == 0x7F) {
+                controls++;
+            }
+        }
+        if (length > 0 && controls > length * MAX_CONTROL_RATIO) {
+            return Classification.skip("binary content (control characters)");
+        }
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer chars = CharBuffer.allocate(length);
+        // A multi-byte sequence cut off by the end of the sniff window is not an error unless the file ends there
+        CoderResult result = decoder.decode(head.duplicate(), chars, complete);
+        if (!result.isError() && complete) {
+            result = decoder.flush(chars);
+        }
+        if (result.isError()) {
+            return Classification.text(LEGACY_CHARSET);
+        }
+        return Classification.text(StandardCharsets.UTF_8);
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes >= 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        if (bytes >= 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return bytes + " B";
+    }
+
+    public static class Classification {
+        private final Charset charset;
+        private final String skipReason;
+
+        private Classification(Charset charset, String skipReason) {
+            this.charset = charset;
+            this.skipReason = skipReason;
+        }
+
+        static Classification text(Charset charset) {
+            return new Classification(charset, null);
+        }
+
+        static Classification skip(String reason) {
+            return new Classification(null, reason);
+        }
+
+        public boolean isText() {
+            return skipReason == null;
+        }
+
+        public Charset getCharset() {
+            return charset;
+        }
+
+        public String getSkipReason() {
+            return skipReason;
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package dev.zerr.lmpactions;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LmpIndex {
+
+    // Parallel parses split the input into regions of at least this many chars, a few per thread
+    private static final int MIN_REGION_CHARS = 1024 * 1024;
+    private static final int REGIONS_PER_THREAD = 4;
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final CharSequence source;
+    private final List<Entry> entries;
+    private final Map<String, Entry> entriesByPath = new LinkedHashMap<>();
+    private final String unclosedPath;
+    private final long version = VERSIONS.incrementAndGet();
+    // Set by reindex: the index it was called on, and how many of its first and last entries were carried over
+    private long baseVersion = -1;
+    private int keptLeading;
+    private int keptTrailing;
+
+    private LmpIndex(CharSequence source, List<Entry> entries, String unclosedPath) {
+        this.source = source;
+        this.entries = entries;
+        this.unclosedPath = unclosedPath;
+        for (Entry entry : entries) {
+            // Later blocks for the same path win, as in extract; first appearance keeps the order
+            entriesByPath.put(entry.path, entry);
+        }
+    }
+
+    public static LmpIndex parse(CharSequence source) {
+        List<Entry> entries = new ArrayList<>();
+        LmpReader reader = new LmpReader(source);
+        LmpReader.Event event;
+
+        while ((event = reader.next()) != LmpReader.Event.END) {
+            if (event == LmpReader.Event.FILE_END) {
+                entries.add(new Entry(reader));
+            }
+        }
+        return new LmpIndex(source, entries, reader.isInFile() ? reader.getPath() : null);
+    }
+
+    // Same result as parse(source), with regions of the input parsed on 'parallelism' threads. Regions start at block
+    // start lines and are parsed as if outside any block; where that guess was wrong, because a block runs on into
+    // the next region, the merge re-parses from that block on until the two parses meet at the same block end
+    public static LmpIndex parse(CharSequence source, int parallelism) {
+        int regionCount = (int) Math.min((long) parallelism * REGIONS_PER_THREAD, source.length() / MIN_REGION_CHARS);
+        if (parallelism <= 1 || regionCount <= 1) {
+            return parse(source);
+        }
+        List<Region> regions = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= regionCount && start < source.length(); i++) {
+            int end = i == regionCount ? source.length() : nextBlockStart(source, (int) ((long) source.length() * i / regionCount));
+            if (end > start) {
+                regions.add(new Region(start, end));
+                start = end;
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Region region : regions) {
+                tasks.add(pool.submit(() -> region.parse(source)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return merge(source, regions);
+    }
+
+    // Start of the first line at or after 'from' that opens a block, or the end of the input
+    private static int nextBlockStart(CharSequence source, int from) {
+        for (int i = Math.max(from, 1); i < source.length(); i++) {
+            char previous = source.charAt(i - 1);
+            if ((previous == '\n' || previous == '\r') && source.charAt(i) == '['
+                    && (startsWith(source, i, LmpReader.START_MARKER) || startsWith(source, i, LmpReader.PATCH_MARKER)
+                    || startsWith(source, i, LmpReader.SAME_MARKER))) {
+                return i;
+            }
+        }
+        return source.length();
+    }
+
+    private static boolean startsWith(CharSequence source, int offset, String prefix) {
+        if (offset + prefix.length() > source.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (source.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static LmpIndex merge(CharSequence source, List<Region> regions) {
+        List<Entry> entries = new ArrayList<>();
+        // The sequential parse is outside any block at 'resume', with every entry before it in 'entries'
+        int resume = 0;
+        String unclosedPath = null;
+        int r = 0;
+        while (r < regions.size()) {
+            Region region = regions.get(r);
+            if (resume == region.start) {
+                entries.addAll(region.entries);
+                resume = region.unclosedStart >= 0 ? region.unclosedStart : region.end;
+                unclosedPath = region.unclosedPath;
+                r++;
+                continue;
+            }
+            // A block opened before this region is still open here: parse on from it until in step with a region
+            LmpReader reader = new LmpReader(source, resume, source.length());
+            LmpReader.Event event;
+            boolean inStep = false;
+            while (!inStep && (event = reader.next()) != LmpReader.Event.END) {
+                if (event != LmpReader.Event.FILE_END) {
+                    continue;
+                }
+                Entry entry = new Entry(reader);
+                entries.add(entry);
+                int position = entry.blockEnd;
+                while (r < regions.size() && regions.get(r).end <= position) {
+                    r++;
+                }
+                if (r == regions.size()) {
+                    continue;
+                }
+                Region current = regions.get(r);
+                if (current.start == position) {
+                    resume = position;
+                    inStep = true;
+                } else {
+                    int next = current.entryAfter(position);
+                    if (next >= 0) {
+                        entries.addAll(current.entries.subList(next, current.entries.size()));
+                        resume = current.unclosedStart >= 0 ? current.unclosedStart : current.end;
+                        unclosedPath = current.unclosedPath;
+                        r++;
+                        inStep = true;
+                    }
+                }
+            }
+            if (!inStep) {
+                return new LmpIndex(source, entries, reader.isInFile() ? reader.getPath() : null);
+            }
+        }
+        return new LmpIndex(source, entries, unclosedPath);
+    }
+
+    // Re-parses only the blocks touched by replacing oldLength chars at offset with newLength chars
+    public LmpIndex reindex(CharSequence newSource, int offset, int oldLength, int newLength) {
+        int delta = newLength - oldLength;
+        int changeEnd = offset + newLength;
+
+        // Blocks that end before the edit are unaffected; one ending exactly at it may have had its end marker line extended
+        int keep = 0;
+        while (keep < entries.size() && entries.get(keep).blockEnd < offset) {
+            keep++;
+        }
+        List<Entry> result = new ArrayList<>(entries.subList(0, keep));
+        int resume = keep > 0 ? entries.get(keep - 1).blockEnd : 0;
+
+        int next = keep;
+        LmpReader reader = new LmpReader(newSource, resume, newSource.length());
+        LmpReader.Event event;
+        while ((event = reader.next()) != LmpReader.Event.END) {
+            if (event != LmpReader.Event.FILE_END) {
+                continue;
+            }
+            Entry entry = new Entry(reader);
+            result.add(entry);
+            if (entry.blockEnd < changeEnd) {
+                continue;
+            }
+            // Past the edit and outside any block: if an old block ended at the same text, the rest is unchanged
+            while (next < entries.size() && entries.get(next).blockEnd + delta < entry.blockEnd) {
+                next++;
+            }
+            if (next < entries.size() && entries.get(next).blockEnd + delta == entry.blockEnd) {
+                for (int i = next + 1; i < entries.size(); i++) {
+                    result.add(entries.get(i).shift(delta));
+                }
+                return reindexed(new LmpIndex(newSource, result, unclosedPath), keep, entries.size() - next - 1);
+            }
+        }
+        return reindexed(new LmpIndex(newSource, result, reader.isInFile() ? reader.getPath() : null), keep, 0);
+    }
+
+    private LmpIndex reindexed(LmpIndex index, int leading, int trailing) {
+        index.baseVersion = version;
+        index.keptLeading = leading;
+        index.keptTrailing = trailing;
+        return index;
+    }
+
+    // Tells indexes apart without holding on to them, see getBaseVersion
+    public long getVersion() {
+        return version;
+    }
+
+    // Version of the index this one was reindexed from, or -1 after a full parse
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    // Entries at the start that reindex carried over from the base index as they were
+    public int getKeptLeading() {
+        return keptLeading;
+    }
+
+    // Entries at the end that reindex carried over from the base index, only shifted by the edit
+    public int getKeptTrailing() {
+        return keptTrailing;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    // Path of a trailing block without FILE_END, or null
+    public String getUnclosedPath() {
+        return unclosedPath;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    // One entry per path: the last block written for it
+    public Collection<Entry> getFileEntries() {
+        return Collections.unmodifiableCollection(entriesByPath.values());
+    }
+
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(entriesByPath.keySet());
+    }
+
+    public int size() {
+        return entriesByPath.size();
+    }
+
+    public boolean contains(String path) {
+        return entriesByPath.containsKey(path);
+    }
+
+    public Entry getEntry(String path) {
+        return entriesByPath.get(path);
+    }
+
+    public CharSequence getContent(String path) {
+        Entry entry = entriesByPath.get(path);
+        return entry != null ? getContent(entry) : null;
+    }
+
+    // The file's content, following a FILE_SAME reference to the file it duplicates
+    public CharSequence getContent(Entry entry) {
+        Entry original = getOriginal(entry);
+        return (original != null ? original : entry).getContent(source);
+    }
+
+    // The entry a FILE_SAME block stands for, or null for any other block. Only references to another file of this
+    // index that is not itself a reference or a patch count; an unresolved reference keeps its body
+    public Entry getOriginal(Entry entry) {
+        String originalPath = referencedPath(entry);
+        Entry original = originalPath != null && !originalPath.equals(entry.path) ? entriesByPath.get(originalPath) : null;
+        return original != null && !original.patch && !original.reference ? original : null;
+    }
+
+    // The content a patch entry gives the file, or the entry's content for a full block
+    public CharSequence getContent(Entry entry, CharSequence existing) throws IOException {
+        return entry.patch ? LmpPatch.parse(entry.getContent(source)).apply(existing) : getContent(entry);
+    }
+
+    // The first line of a FILE_SAME body, or null for any other block
+    private String referencedPath(Entry entry) {
+        if (!entry.reference) {
+            return null;
+        }
+        int end = entry.bodyStart;
+        while (end < entry.bodyEnd && source.charAt(end) != '\n' && source.charAt(end) != '\r') end++;
+        String originalPath = source.subSequence(entry.bodyStart, end).toString().trim();
+        return originalPath.isEmpty() ? null : originalPath;
+    }
+
+    // Estimated tokens of one file body, or -1 if the path is not in the index
+    public long getTokens(String path, LmpTokenEstimator estimator) {
+        Entry entry = entriesByPath.get(path);
+        return entry != null ? entry.getTokens(source, estimator) : -1;
+    }
+
+    public long getTotalTokens(LmpTokenEstimator estimator) {
+        long total = 0;
+        for (Entry entry : entriesByPath.values()) {
+            total += entry.getTokens(source, estimator);
+        }
+        return total;
+    }
+
+    // One slice of a parallel parse, parsed as if it started outside any block
+    private static final class Region {
+        private final int start;
+        private final int end;
+        private final List<Entry> entries = new ArrayList<>();
+        // Header of a block still open at the end of the region, or -1
+        private int unclosedStart = -1;
+        private String unclosedPath;
+
+        private Region(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        private void parse(CharSequence source) {
+            LmpReader reader = new LmpReader(source, start, end);
+            LmpReader.Event event;
+            while ((event = reader.next()) != LmpReader.Event.END) {
+                if (event == LmpReader.Event.FILE_END) {
+                    entries.add(new Entry(reader));
+                }
+            }
+            if (reader.isInFile()) {
+                unclosedStart = reader.getHeaderStart();
+                unclosedPath = reader.getPath();
+            }
+        }
+
+        // Index of the first entry after one that ends at 'blockEnd', or -1 when no entry ends there
+        private int entryAfter(int blockEnd) {
+            int low = 0;
+            int high = entries.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int value = entries.get(middle).blockEnd;
+                if (value < blockEnd) {
+                    low = middle + 1;
+                } else if (value > blockEnd) {
+                    high = middle - 1;
+                } else {
+                    return middle + 1;
+                }
+            }
+            return -1;
+        }
+    }
+
+    public static class Entry {
+        private final String path;
+        private final int headerStart;
+        private final int bodyStart;
+        private final int bodyEnd;
+        private final int blockEnd;
+        private final boolean bodyVerbatim;
+        private final boolean patch;
+        private final boolean reference;
+        // Body estimate for tokensMode; kept when the entry is shifted by a reindex, so unchanged blocks are never recounted
+        private long tokens = -1;
+        private LmpTokenEstimator.Mode tokensMode;
+
+        private Entry(LmpReader reader) {
+            this.path = reader.getPath();
+            this.headerStart = reader.getHeaderStart();
+            this.bodyStart = reader.getBodyStart();
+            this.bodyEnd = reader.getBodyEnd();
+            this.blockEnd = reader.getBlockEnd();
+            this.bodyVerbatim = reader.isBodyVerbatim();
+            this.patch = reader.isPatch();
+            this.reference = reader.isReference();
+        }
+
+        private Entry(Entry entry, int delta) {
+            this.path = entry.path;
+            this.headerStart = entry.headerStart + delta;
+            this.bodyStart = entry.bodyStart + delta;
+            this.bodyEnd = entry.bodyEnd + delta;
+            this.blockEnd = entry.blockEnd + delta;
+            this.bodyVerbatim = entry.bodyVerbatim;
+            this.patch = entry.patch;
+            this.reference = entry.reference;
+            synchronized (entry) {
+                this.tokensMode = entry.tokensMode;
+                this.tokens = entry.tokens;
+            }
+        }
+
+        private Entry shift(int delta) {
+            return delta == 0 ? this : new Entry(this, delta);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getHeaderStart() {
+            return headerStart;
+        }
+
+        public int getBodyStart() {
+            return bodyStart;
+        }
+
+        public int getBodyEnd() {
+            return bodyEnd;
+        }
+
+        public int getBlockEnd() {
+            return blockEnd;
+        }
+
+        public boolean isBodyVerbatim() {
+            return bodyVerbatim;
+        }
+
+        // A FILE_PATCH block: the body is unified diff hunks against the existing file
+        public boolean isPatch() {
+            return patch;
+        }
+
+        // A FILE_SAME block: the body is the path of the file with the same content
+        public boolean isReference() {
+            return reference;
+        }
+
+        // A view over the source text; only bodies that need line ending normalization are copied
+        public CharSequence getContent(CharSequence source) {
+            if (bodyVerbatim) {
+                return CharBuffer.wrap(source, bodyStart, bodyEnd);
+            }
+            StringBuilder body = new StringBuilder(bodyEnd - bodyStart);
+            try {
+                LmpReader.writeBody(source, bodyStart, bodyEnd, false, body);
+            } catch (IOException e) {
+                // Should not happen with StringBuilder
+            }
+            return body;
+        }
+
+        public synchronized long getTokens(CharSequence source, LmpTokenEstimator estimator) {
+            if (tokensMode != estimator.getMode() || tokens < 0) {
+                LmpTokenEstimator.Counter counter = estimator.newCounter();
+                if (bodyVerbatim) {
+                    counter.feed(source, bodyStart, bodyEnd);
+                } else {
+                    CharSequence body = getContent(source);
+                    counter.feed(body, 0, body.length());
+                }
+                tokens = counter.finish();
+                tokensMode = estimator.getMode();
+            }
+            return tokens;
+        }
+
+        public void writeContent(CharSequence source, Appendable out) throws IOException {
+            LmpReader.writeBody(source, bodyStart, bodyEnd, bodyVerbatim, out);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package dev.zerr.lmpactions;
+
+import jdk.jfr.*;
+
+@Name("dev.zerr.lmpactions.Operation")
+@Label("LMP Operation")
+@Category("LMP Actions")
+@Description("A pack or extract run, with its counters")
+class LmpOperationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Files Scanned")
+    long filesScanned;
+
+    @Label("Files Skipped")
+    long filesSkipped;
+
+    @Label("Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Peak Buffer")
+    @DataAmount
+    long peakBuffer;
+}
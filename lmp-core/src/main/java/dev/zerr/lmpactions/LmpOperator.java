@@ -0,0 +1,109 @@
+package dev.zerr.lmpactions;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+public class LmpOperator {
+
+    private static final int PARSE_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private volatile LmpStats lastStats;
+
+    // Stats of the last finished call, or null
+    public LmpStats getLastStats() {
+        return lastStats;
+    }
+
+    public int extract(String lmpContent, Path destDir) throws IOException {
+        LmpExtractor extractor = new LmpExtractor();
+        try {
+            return extractor.extract(lmpContent, destDir).getTotalFiles();
+        } finally {
+            finish(extractor.getStats());
+        }
+    }
+
+    // Extracts straight from an LMP file, which is mapped rather than read into a String
+    public int extract(Path lmpFile, Path destDir) throws IOException {
+        LmpExtractor extractor = new LmpExtractor();
+        try {
+            return extractor.extract(lmpFile, destDir).getTotalFiles();
+        } finally {
+            finish(extractor.getStats());
+        }
+    }
+
+    public List<String> parseFileList(String lmpContent) {
+        LmpStats stats = new LmpStats("parse");
+        List<String> files = new ArrayList<>();
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.PARSE)) {
+            // Every block start, in order: the closed blocks, then a trailing one without FILE_END
+            LmpIndex index = LmpIndex.parse(lmpContent, PARSE_PARALLELISM);
+            for (LmpIndex.Entry entry : index.getEntries()) {
+                files.add(entry.getPath());
+            }
+            if (index.getUnclosedPath() != null) {
+                files.add(index.getUnclosedPath());
+            }
+        }
+        stats.filesScanned(files.size());
+        stats.bytesRead(lmpContent.length());
+        finish(stats);
+        return files;
+    }
+
+    public Map<String, String> parseFileContents(String lmpContent) {
+        LmpStats stats = new LmpStats("parse");
+        Map<String, String> fileContents = new HashMap<>();
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.PARSE)) {
+            LmpIndex index = LmpIndex.parse(lmpContent, PARSE_PARALLELISM);
+            // The last block for a path wins, and duplicates are resolved to the content they refer to
+            for (LmpIndex.Entry entry : index.getFileEntries()) {
+                fileContents.put(entry.getPath(), index.getContent(entry).toString());
+            }
+        }
+        stats.filesScanned(fileContents.size());
+        stats.bytesRead(lmpContent.length());
+        finish(stats);
+        return fileContents;
+    }
+
+    public String copyFolderAsLmp(Path folderPath, List<String> excludeExtensions, List<Pattern> excludePatterns, Path relativeTo) throws IOException {
+        StringWriter lmpContent = new StringWriter();
+        packFolder(folderPath, excludeExtensions, excludePatterns, relativeTo, new LmpWriter(lmpContent));
+        return lmpContent.toString();
+    }
+
+    public String copyFileAsLmp(Path filePath, Path relativeTo) throws IOException {
+        StringWriter lmpContent = new StringWriter();
+        packFile(filePath, relativeTo, new LmpWriter(lmpContent));
+        return lmpContent.toString();
+    }
+
+    public void packFolder(Path folderPath, List<String> excludeExtensions, List<Pattern> excludePatterns, Path relativeTo, LmpWriter out) throws IOException {
+        LmpPackOptions options = new LmpPackOptions()
+                .setExclusions(new LmpExclusions(relativeTo, excludeExtensions, List.of(), excludePatterns, false));
+        LmpPacker packer = new LmpPacker(options);
+        try {
+            packer.packFolder(folderPath, relativeTo, out);
+        } finally {
+            finish(packer.getStats());
+        }
+    }
+
+    public void packFile(Path filePath, Path relativeTo, LmpWriter out) throws IOException {
+        LmpPacker packer = new LmpPacker(new LmpPackOptions());
+        try {
+            packer.packFile(filePath, relativeTo, out);
+        } finally {
+            finish(packer.getStats());
+        }
+    }
+
+    private void finish(LmpStats stats) {
+        stats.finish();
+        lastStats = stats;
+    }
+}
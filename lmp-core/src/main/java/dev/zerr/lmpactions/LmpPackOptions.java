@@ -0,0 +1,105 @@
+package dev.zerr.lmpactions;
+
+public class LmpPackOptions {
+
+    public enum BudgetPolicy {
+        // Pack everything and flag the report once the budget is exceeded
+        WARN,
+        // Leave out every file from the one that would exceed the budget onwards
+        STOP
+    }
+
+    private LmpExclusions exclusions;
+    private int parallelism = 1;
+    private long maxFileSize = LmpFileClassifier.DEFAULT_MAX_FILE_SIZE;
+    private LmpTokenEstimator tokenEstimator;
+    private LmpTokenCache tokenCache;
+    private LmpChunkCache chunkCache;
+    private long tokenBudget;
+    private BudgetPolicy budgetPolicy = BudgetPolicy.WARN;
+    private boolean deduplicate;
+
+    public LmpExclusions getExclusions() {
+        return exclusions;
+    }
+
+    // Null packs every regular file
+    public LmpPackOptions setExclusions(LmpExclusions exclusions) {
+        this.exclusions = exclusions;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // 1 packs sequentially, streaming each file; higher values walk and read files concurrently
+    public LmpPackOptions setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    // Larger files are skipped without being read
+    public LmpPackOptions setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+        return this;
+    }
+
+    public LmpTokenEstimator getTokenEstimator() {
+        return tokenEstimator;
+    }
+
+    // Null disables token counting
+    public LmpPackOptions setTokenEstimator(LmpTokenEstimator tokenEstimator) {
+        this.tokenEstimator = tokenEstimator;
+        return this;
+    }
+
+    public LmpTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public LmpPackOptions setTokenCache(LmpTokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+        return this;
+    }
+
+    public LmpChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    // Reuses rendered chunks of files whose stamp is unchanged; null renders every file
+    public LmpPackOptions setChunkCache(LmpChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+        return this;
+    }
+
+    public long getTokenBudget() {
+        return tokenBudget;
+    }
+
+    public BudgetPolicy getBudgetPolicy() {
+        return budgetPolicy;
+    }
+
+    // A budget of 0 means unlimited; budgets need a token estimator
+    public LmpPackOptions setTokenBudget(long tokenBudget, BudgetPolicy budgetPolicy) {
+        this.tokenBudget = tokenBudget;
+        this.budgetPolicy = budgetPolicy;
+        return this;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    // Bodies identical to one already packed are written as a FILE_SAME reference to it
+    public LmpPackOptions setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        return this;
+    }
+}
@@ -0,0 +1,107 @@
+package dev.zerr.lmpactions;
+
+import java.util.*;
+
+public class LmpPackReport {
+
+    private int filesWritten;
+    private final List<SkippedFile> skippedFiles = new ArrayList<>();
+    private final Map<String, Long> fileTokens = new LinkedHashMap<>();
+    private long totalTokens;
+    private long tokenBudget;
+    private boolean budgetExceeded;
+    private int cacheHits;
+    private int cacheMisses;
+    private final Map<String, String> duplicates = new LinkedHashMap<>();
+
+    // tokens is -1 when no estimator is configured
+    synchronized void fileWritten(String path, long tokens) {
+        filesWritten++;
+        if (tokens >= 0) {
+            fileTokens.put(path, tokens);
+            totalTokens += tokens;
+        }
+    }
+
+    synchronized void budgetExceeded(long tokenBudget) {
+        this.tokenBudget = tokenBudget;
+        this.budgetExceeded = true;
+    }
+
+    synchronized void chunkLookedUp(boolean hit) {
+        if (hit) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+    }
+
+    synchronized void fileDeduplicated(String path, String originalPath) {
+        duplicates.put(path, originalPath);
+    }
+
+    synchronized void fileSkipped(String path, String reason) {
+        skippedFiles.add(new SkippedFile(path, reason));
+    }
+
+    public synchronized int getFilesWritten() {
+        return filesWritten;
+    }
+
+    // Files written as a reference to an earlier file with the same content, mapped to that file
+    public synchronized Map<String, String> getDuplicates() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(duplicates));
+    }
+
+    public synchronized List<SkippedFile> getSkippedFiles() {
+        return Collections.unmodifiableList(new ArrayList<>(skippedFiles));
+    }
+
+    public synchronized boolean hasTokenCounts() {
+        return !fileTokens.isEmpty();
+    }
+
+    // Estimated tokens per packed file, markers included, in output order
+    public synchronized Map<String, Long> getFileTokens() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(fileTokens));
+    }
+
+    public synchronized long getTotalTokens() {
+        return totalTokens;
+    }
+
+    public synchronized boolean isBudgetExceeded() {
+        return budgetExceeded;
+    }
+
+    public synchronized long getTokenBudget() {
+        return tokenBudget;
+    }
+
+    // Files served from the chunk cache in this pack; both are 0 without a cache
+    public synchronized int getCacheHits() {
+        return cacheHits;
+    }
+
+    public synchronized int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public static class SkippedFile {
+        private final String path;
+        private final String reason;
+
+        private SkippedFile(String path, String reason) {
+            this.path = path;
+            this.reason = reason;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package dev.zerr.lmpactions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LmpPacker {
+
+    // Rendered chunks allowed in flight per worker, bounding memory while keeping the disks busy
+    private static final int CHUNKS_PER_WORKER = 4;
+    // Shorter bodies are always written out; a reference would save next to nothing
+    private static final int MIN_DEDUP_LENGTH = 256;
+
+    private final LmpPackOptions options;
+    private final LmpFileClassifier classifier;
+    private final LmpPackReport report = new LmpPackReport();
+    private final LmpStats stats = new LmpStats("pack");
+    private final LmpTokenEstimator estimator;
+    private final long markerTokens;
+    // Only read and written by the thread calling pack*
+    private boolean budgetReached;
+    // Body digest to the first file written with that body; same thread
+    private final Map<String, String> firstByDigest = new HashMap<>();
+
+    public LmpPacker(LmpPackOptions options) {
+        this.options = options;
+        this.classifier = new LmpFileClassifier(options.getMaxFileSize());
+        this.estimator = options.getTokenEstimator();
+        this.markerTokens = estimator != null ? estimator.estimate("[FILE_START: ]\n\n[FILE_END: ]\n\n") : 0;
+    }
+
+    public LmpPackOptions getOptions() {
+        return options;
+    }
+
+    public LmpPackReport getReport() {
+        return report;
+    }
+
+    // Counters and timings of everything this packer wrote; callers add their own phases and call finish
+    public LmpStats getStats() {
+        return stats;
+    }
+
+    public void packFolder(Path folderPath, Path relativeTo, LmpWriter out) throws IOException {
+        ForkJoinPool pool = isParallel() ? new ForkJoinPool(options.getParallelism()) : null;
+        try {
+            pack(listFiles(folderPath, relativeTo, pool), out, pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // Packs files listed by the caller, e.g. from the IDE's VFS, sorted by LMP path
+    public void pack(Collection<? extends LmpSourceFile> files, LmpWriter out) throws IOException {
+        List<LmpSourceFile> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(LmpSourceFile::getRelPath));
+        ForkJoinPool pool = isParallel() && sorted.size() > 1 ? new ForkJoinPool(options.getParallelism()) : null;
+        try {
+            pack(sorted, out, pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // Renders each file into snapshot, replacing its previous chunk; nothing is written. The budget applies when the
+    // snapshot is written out, and so does deduplication, from the digests kept with the chunks
+    public void render(Collection<? extends LmpSourceFile> files, LmpSnapshot snapshot) throws IOException {
+        stats.filesScanned(files.size());
+        List<LmpSourceFile> pending = new ArrayList<>(files);
+        ForkJoinPool pool = options.getParallelism() > 1 && pending.size() > 1 ? new ForkJoinPool(options.getParallelism()) : null;
+        try {
+            if (pool == null) {
+                for (LmpSourceFile file : pending) {
+                    store(render(file), snapshot);
+                }
+                return;
+            }
+            List<Future<Chunk>> chunks = new ArrayList<>(pending.size());
+            for (LmpSourceFile file : pending) {
+                chunks.add(pool.submit(() -> render(file)));
+            }
+            for (Future<Chunk> chunk : chunks) {
+                store(await(chunk), snapshot);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private void store(Chunk chunk, LmpSnapshot snapshot) {
+        if (chunk.skipReason != null) {
+            skipped(chunk.file, chunk.skipReason);
+            snapshot.skip(chunk.file.getRelPath(), chunk.skipReason);
+            return;
+        }
+        long tokens = estimator != null ? fileTokens(chunk.file, chunk.bodyTokens) : -1;
+        snapshot.put(chunk.file.getRelPath(), chunk.text, tokens, chunk.digest);
+        report.fileWritten(chunk.file.getRelPath(), tokens);
+    }
+
+    private boolean isParallel() {
+        return options.getParallelism() > 1 && !budgetReached;
+    }
+
+    private void pack(List<LmpSourceFile> files, LmpWriter out, ForkJoinPool pool) throws IOException {
+        stats.filesScanned(files.size());
+        long written = out.getCharsWritten();
+        try {
+            if (pool == null) {
+                for (LmpSourceFile file : files) {
+                    packClassified(file, out);
+                }
+            } else {
+                writeParallel(files, out, pool);
+            }
+        } finally {
+            stats.bytesWritten(out.getCharsWritten() - written);
+        }
+    }
+
+    public void packFile(Path filePath, Path relativeTo, LmpWriter out) throws IOException {
+        String relPath = relativeTo != null ? toLmpPath(relativeTo, filePath) : filePath.getFileName().toString();
+        BasicFileAttributes attrs = null;
+        try {
+            attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // Reported as unreadable by the classifier
+        }
+        pack(LmpSourceFile.of(filePath, relPath, attrs), out);
+    }
+
+    public void pack(LmpSourceFile file, LmpWriter out) throws IOException {
+        pack(List.of(file), out, null);
+    }
+
+    private void packClassified(LmpSourceFile file, LmpWriter out) throws IOException {
+        if (budgetReached) {
+            skipped(file, budgetSkipReason());
+            return;
+        }
+        if (options.getChunkCache() != null || options.isDeduplicate()) {
+            // Cached files are written from memory and duplicates need the body first, so the file is rendered whole
+            writeChunk(render(file), out);
+            return;
+        }
+        LmpFileClassifier.Classification classification = classify(file);
+        if (!classification.isText()) {
+            skipped(file, classification.getSkipReason());
+            return;
+        }
+        long bodyTokens = cachedTokens(file);
+        if (bodyTokens < 0 && isStopAtBudget()) {
+            // The count is needed before anything is written; cached for next time
+            bodyTokens = countTokens(file, classification);
+        }
+        if (bodyTokens >= 0 && !acceptWithinBudget(file, bodyTokens)) {
+            return;
+        }
+        LmpTokenEstimator.Counter counter = bodyTokens < 0 && estimator != null ? estimator.newCounter() : null;
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.RENDER)) {
+            file.write(out, classification.getCharset(), counter);
+        }
+        if (counter != null) {
+            bodyTokens = counter.finish();
+            cacheTokens(file, bodyTokens);
+        }
+        fileWritten(file, bodyTokens);
+    }
+
+    private boolean isStopAtBudget() {
+        return estimator != null && options.getTokenBudget() > 0 && options.getBudgetPolicy() == LmpPackOptions.BudgetPolicy.STOP;
+    }
+
+    // Under STOP, refuses the file that would exceed the budget and every file after it
+    private boolean acceptWithinBudget(LmpSourceFile file, long bodyTokens) {
+        if (!isStopAtBudget() || report.getTotalTokens() + fileTokens(file, bodyTokens) <= options.getTokenBudget()) {
+            return true;
+        }
+        budgetReached = true;
+        report.budgetExceeded(options.getTokenBudget());
+        skipped(file, budgetSkipReason());
+        return false;
+    }
+
+    private void skipped(LmpSourceFile file, String reason) {
+        report.fileSkipped(file.getRelPath(), reason);
+        stats.fileSkipped();
+    }
+
+    private void fileWritten(LmpSourceFile file, long bodyTokens) {
+        report.fileWritten(file.getRelPath(), estimator != null ? fileTokens(file, bodyTokens) : -1);
+        if (estimator != null && options.getTokenBudget() > 0 && report.getTotalTokens() > options.getTokenBudget()) {
+            report.budgetExceeded(options.getTokenBudget());
+        }
+    }
+
+    private long fileTokens(LmpSourceFile file, long bodyTokens) {
+        return bodyTokens + markerTokens + 2 * estimator.estimate(file.getRelPath());
+    }
+
+    private String budgetSkipReason() {
+        return "token budget of " + options.getTokenBudget() + " reached";
+    }
+
+    private long cachedTokens(LmpSourceFile file) {
+        LmpTokenCache cache = options.getTokenCache();
+        return estimator != null && cache != null ? cache.get(file.getKey(), file.getStamp(), file.getSize(), estimator.getMode()) : -1;
+    }
+
+    private void cacheTokens(LmpSourceFile file, long bodyTokens) {
+        LmpTokenCache cache = options.getTokenCache();
+        if (cache != null) {
+            cache.put(file.getKey(), file.getStamp(), file.getSize(), estimator.getMode(), bodyTokens);
+        }
+    }
+
+    private long countTokens(LmpSourceFile file, LmpFileClassifier.Classification classification) throws IOException {
+        LmpTokenEstimator.Counter counter = estimator.newCounter();
+        try (LmpWriter sink = new LmpWriter(Writer.nullWriter())) {
+            file.write(sink, classification.getCharset(), counter);
+        }
+        long bodyTokens = counter.finish();
+        cacheTokens(file, bodyTokens);
+        return bodyTokens;
+    }
+
+    private LmpFileClassifier.Classification classify(LmpSourceFile file) {
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.FILTER)) {
+            LmpFileClassifier.Classification classification = file.classify(classifier);
+            if (classification.isText()) {
+                stats.bytesRead(file.getSize());
+            }
+            return classification;
+        } catch (IOException e) {
+            return LmpFileClassifier.Classification.skip("unreadable (" + e.getMessage() + ")");
+        }
+    }
+
+    // Included files under dir, sorted by LMP path so output is identical however the walk was scheduled
+    private List<LmpSourceFile> listFiles(Path dir, Path relativeTo, ForkJoinPool pool) throws IOException {
+        LmpExclusions exclusions = options.getExclusions();
+        if (exclusions != null && exclusions.isExcludedTree(dir)) {
+            return List.of();
+        }
+        List<LmpSourceFile> result;
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.WALK)) {
+            result = pool == null ? walk(dir, relativeTo) : pool.invoke(new WalkTask(dir, relativeTo, exclusions));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        result.sort(Comparator.comparing(LmpSourceFile::getRelPath));
+        return result;
+    }
+
+    private List<LmpSourceFile> walk(Path dir, Path relativeTo) throws IOException {
+        LmpExclusions exclusions = options.getExclusions();
+        List<LmpSourceFile> result = new ArrayList<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) {
+                // Excluded trees (node_modules/, .git/, ignored output...) are never listed
+                if (!subdir.equals(dir) && exclusions != null && exclusions.isExcludedDirectory(subdir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isIncludedFile(file, attrs, exclusions)) {
+                    result.add(LmpSourceFile.of(file, toLmpPath(relativeTo, file), attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result;
+    }
+
+    private static boolean isIncludedFile(Path file, BasicFileAttributes attrs, LmpExclusions exclusions) {
+        boolean regularFile = attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file));
+        return regularFile && (exclusions == null || !exclusions.isExcludedFile(file));
+    }
+
+    private void writeParallel(List<LmpSourceFile> files, LmpWriter out, ForkJoinPool pool) throws IOException {
+        int window = options.getParallelism() * CHUNKS_PER_WORKER;
+        Deque<Future<Chunk>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < files.size() || !pending.isEmpty()) {
+                while (next < files.size() && pending.size() < window) {
+                    LmpSourceFile file = files.get(next++);
+                    pending.add(pool.submit(() -> render(file)));
+                }
+                // Chunks are written strictly in submission (sorted) order
+                if (!writeChunk(await(pending.poll()), out)) {
+                    break;
+                }
+            }
+            // Once the budget stops packing, the files still queued or unread are all left out
+            for (int i = next - pending.size(); i < files.size() && budgetReached; i++) {
+                skipped(files.get(i), budgetSkipReason());
+            }
+        } finally {
+            for (Future<Chunk> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    // False once the budget stops packing
+    private boolean writeChunk(Chunk chunk, LmpWriter out) throws IOException {
+        if (chunk.skipReason != null) {
+            skipped(chunk.file, chunk.skipReason);
+            return true;
+        }
+        String originalPath = chunk.digest != null ? firstByDigest.get(chunk.digest) : null;
+        if (originalPath != null && !originalPath.equals(chunk.file.getRelPath())) {
+            return writeReference(chunk.file, originalPath, out);
+        }
+        if (!acceptWithinBudget(chunk.file, chunk.bodyTokens)) {
+            return false;
+        }
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.WRITE)) {
+            out.write(chunk.text);
+        }
+        fileWritten(chunk.file, chunk.bodyTokens);
+        if (chunk.digest != null) {
+            firstByDigest.putIfAbsent(chunk.digest, chunk.file.getRelPath());
+        }
+        return true;
+    }
+
+    private boolean writeReference(LmpSourceFile file, String originalPath, LmpWriter out) throws IOException {
+        long bodyTokens = estimator != null ? estimator.estimate(originalPath + "\n") : -1;
+        if (bodyTokens >= 0 && !acceptWithinBudget(file, bodyTokens)) {
+            return false;
+        }
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.WRITE)) {
+            out.writeReference(file.getRelPath(), originalPath);
+        }
+        fileWritten(file, bodyTokens);
+        report.fileDeduplicated(file.getRelPath(), originalPath);
+        return true;
+    }
+
+    private Chunk render(LmpSourceFile file) throws IOException {
+        LmpChunkCache cache = options.getChunkCache();
+        boolean cacheable = cache != null && file.getStamp() != -1 && file.getSize() <= options.getMaxFileSize();
+        if (cacheable) {
+            String text = cache.get(chunkKey(file), file.getStamp(), file.getSize());
+            report.chunkLookedUp(text != null);
+            if (text != null) {
+                return new Chunk(file, text, cachedChunkTokens(file, text), digest(file, text), null);
+            }
+        }
+        LmpFileClassifier.Classification classification = classify(file);
+        if (!classification.isText()) {
+            return new Chunk(file, null, -1, null, classification.getSkipReason());
+        }
+        long bodyTokens = cachedTokens(file);
+        LmpTokenEstimator.Counter counter = bodyTokens < 0 && estimator != null ? estimator.newCounter() : null;
+        StringWriter chunk = new StringWriter();
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.RENDER)) {
+            file.write(new LmpWriter(chunk), classification.getCharset(), counter);
+        }
+        if (counter != null) {
+            bodyTokens = counter.finish();
+            cacheTokens(file, bodyTokens);
+        }
+        String text = chunk.toString();
+        stats.bufferUsed(text.length());
+        if (cacheable) {
+            cache.put(chunkKey(file), file.getStamp(), file.getSize(), text);
+        }
+        return new Chunk(file, text, bodyTokens, digest(file, text), null);
+    }
+
+    // The chunk embeds the relative path, so the same file packed relative to another root is a different chunk
+    private static String chunkKey(LmpSourceFile file) {
+        return file.getKey() + "\n" + file.getRelPath();
+    }
+
+    private long cachedChunkTokens(LmpSourceFile file, String text) {
+        long bodyTokens = cachedTokens(file);
+        if (bodyTokens < 0 && estimator != null) {
+            // Count the body between the markers instead of reading the file again
+            int bodyStart = chunkBodyStart(file);
+            int bodyEnd = chunkBodyEnd(file, text);
+            LmpTokenEstimator.Counter counter = estimator.newCounter();
+            counter.feed(text, bodyStart, Math.max(bodyStart, bodyEnd));
+            bodyTokens = counter.finish();
+            cacheTokens(file, bodyTokens);
+        }
+        return bodyTokens;
+    }
+
+    private static int chunkBodyStart(LmpSourceFile file) {
+        return LmpReader.START_MARKER.length() + file.getRelPath().length() + 2;
+    }
+
+    private static int chunkBodyEnd(LmpSourceFile file, String text) {
+        return text.length() - (LmpReader.END_MARKER.length() + file.getRelPath().length() + 3);
+    }
+
+    // SHA-256 of the chunk's body, or null when deduplication is off or the body is too short to bother
+    private String digest(LmpSourceFile file, String text) {
+        int bodyStart = chunkBodyStart(file);
+        int bodyEnd = chunkBodyEnd(file, text);
+        if (!options.isDeduplicate() || bodyEnd - bodyStart < MIN_DEDUP_LENGTH) {
+            return null;
+        }
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(text.substring(bodyStart, bodyEnd).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Packing interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    public static String toLmpPath(Path relativeTo, Path file) {
+        return relativeTo.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static class Chunk {
+        private final LmpSourceFile file;
+        private final String text;
+        private final long bodyTokens;
+        private final String digest;
+        private final String skipReason;
+
+        private Chunk(LmpSourceFile file, String text, long bodyTokens, String digest, String skipReason) {
+            this.file = file;
+            this.text = text;
+            this.bodyTokens = bodyTokens;
+            this.digest = digest;
+            this.skipReason = skipReason;
+        }
+    }
+
+    // Fork-join directory walk with Files.walk semantics: symlinked directories are not followed
+    private static class WalkTask extends RecursiveTask<List<LmpSourceFile>> {
+        private final Path dir;
+        private final Path relativeTo;
+        private final LmpExclusions exclusions;
+
+        private WalkTask(Path dir, Path relativeTo, LmpExclusions exclusions) {
+            this.dir = dir;
+            this.relativeTo = relativeTo;
+            this.exclusions = exclusions;
+        }
+
+        @Override
+        protected List<LmpSourceFile> compute() {
+            List<LmpSourceFile> files = new ArrayList<>();
+            List<WalkTask> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        if (exclusions == null || !exclusions.isExcludedDirectory(entry)) {
+                            WalkTask task = new WalkTask(entry, relativeTo, exclusions);
+                            task.fork();
+                            subdirs.add(task);
+                        }
+                    } else if (isIncludedFile(entry, attrs, exclusions)) {
+                        files.add(LmpSourceFile.of(entry, toLmpPath(relativeTo, entry), attrs));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (WalkTask task : subdirs) {
+                files.addAll(task.join());
+            }
+            return files;
+        }
+    }
+}
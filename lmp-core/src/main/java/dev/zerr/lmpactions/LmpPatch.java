@@ -0,0 +1,488 @@
+package dev.zerr.lmpactions;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Unified diff hunks of one file, the body of a [FILE_PATCH: path] block
+public class LmpPatch {
+
+    public static final int DEFAULT_CONTEXT = 3;
+
+    // Context lines a hunk may lose at each end when its full context is not found, as with patch --fuzz=2
+    private static final int MAX_FUZZ = 2;
+    // Past this many changed lines a diff stops looking for a minimal edit and replaces the changed range whole
+    private static final int MAX_EDIT_DISTANCE = 1024;
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@");
+    private static final String NO_NEWLINE = "\\ No newline at end of file";
+
+    private final List<Hunk> hunks;
+
+    private LmpPatch(List<Hunk> hunks) {
+        this.hunks = hunks;
+    }
+
+    // Header counts are only used to drop trailing blank lines; hunks run to the next @@ line,
+    // so a model's miscounted headers still parse
+    public static LmpPatch parse(CharSequence body) throws IOException {
+        List<Hunk> hunks = new ArrayList<>();
+        Hunk hunk = null;
+        int lineNumber = 0;
+        for (String line : lines(body)) {
+            lineNumber++;
+            if (line.startsWith("@@")) {
+                hunk = new Hunk(line);
+                hunks.add(hunk);
+            } else if (hunk == null) {
+                // File headers of a git or diff -u patch
+                if (!line.isBlank() && !line.startsWith("---") && !line.startsWith("+++")
+                        && !line.startsWith("diff ") && !line.startsWith("index ")) {
+                    throw new IOException("Line " + lineNumber + " is not part of a hunk: " + line);
+                }
+            } else if (line.isEmpty()) {
+                // Blank context lines often lose their leading space
+                hunk.add(' ', "");
+            } else if (line.startsWith("\\")) {
+                hunk.noNewline();
+            } else if (line.charAt(0) == ' ' || line.charAt(0) == '-' || line.charAt(0) == '+') {
+                hunk.add(line.charAt(0), line.substring(1));
+            } else {
+                throw new IOException("Line " + lineNumber + " is not part of a hunk: " + line);
+            }
+        }
+        if (hunks.isEmpty()) {
+            throw new IOException("Patch has no hunks");
+        }
+        for (Hunk each : hunks) {
+            each.dropTrailingBlankLines();
+        }
+        return new LmpPatch(hunks);
+    }
+
+    public int getHunkCount() {
+        return hunks.size();
+    }
+
+    // Each hunk goes to the nearest place its context matches, first exactly, then ignoring whitespace, then with
+    // up to MAX_FUZZ context lines dropped at each end. A hunk that matches nowhere fails the whole patch.
+    // Lines of the file keep their own terminator, and so do lines replacing them; other inserted lines take that of
+    // the line before them, or after it at the start of the file
+    public String apply(CharSequence text) throws IOException {
+        boolean endsWithNewline = text.length() == 0 || text.charAt(text.length() - 1) == '\n';
+        List<String> lines = lines(text);
+        List<String> terminators = terminators(text);
+        List<String> result = new ArrayList<>(lines.size());
+        List<String> resultTerminators = new ArrayList<>(lines.size());
+        int done = 0;
+        int delta = 0;
+        for (int i = 0; i < hunks.size(); i++) {
+            Hunk hunk = hunks.get(i);
+            Match match = hunk.find(lines, done, delta);
+            if (match == null) {
+                throw new IOException("Hunk " + (i + 1) + (hunk.oldStart > 0 ? " at line " + hunk.oldStart : "")
+                        + " does not match the file");
+            }
+            result.addAll(lines.subList(done, match.position));
+            resultTerminators.addAll(terminators.subList(done, match.position));
+            done = hunk.apply(lines, terminators, match, result, resultTerminators);
+            if (hunk.oldStart > 0) {
+                delta = match.position - (hunk.oldStart - 1 + match.head);
+            }
+            if (hunk.newNoNewline) {
+                endsWithNewline = false;
+            } else if (hunk.oldNoNewline) {
+                endsWithNewline = true;
+            }
+        }
+        result.addAll(lines.subList(done, lines.size()));
+        resultTerminators.addAll(terminators.subList(done, lines.size()));
+
+        String next = text.toString().contains("\r\n") ? "\r\n" : "\n";
+        for (String terminator : resultTerminators) {
+            if (terminator != null) {
+                next = terminator;
+                break;
+            }
+        }
+        StringBuilder patched = new StringBuilder(text.length() + 64);
+        String previous = null;
+        for (int i = 0; i < result.size(); i++) {
+            String terminator = resultTerminators.get(i);
+            if (terminator != null) {
+                previous = terminator;
+            }
+            patched.append(result.get(i));
+            if (i < result.size() - 1 || endsWithNewline) {
+                patched.append(terminator != null ? terminator : previous != null ? previous : next);
+            }
+        }
+        return patched.toString();
+    }
+
+    // Unified diff hunks turning oldText into newText, without file headers; empty when they are equal
+    public static String diff(CharSequence oldText, CharSequence newText, int context) {
+        // Lines keep their terminator, so a change to the final newline is a change to the last line
+        List<String> a = linesWithTerminators(oldText);
+        List<String> b = linesWithTerminators(newText);
+        int prefix = 0;
+        while (prefix < a.size() && prefix < b.size() && a.get(prefix).equals(b.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.size() - prefix && suffix < b.size() - prefix
+                && a.get(a.size() - 1 - suffix).equals(b.get(b.size() - 1 - suffix))) {
+            suffix++;
+        }
+
+        StringBuilder ops = new StringBuilder(a.size() + b.size());
+        ops.append(" ".repeat(prefix));
+        String middle = editScript(a.subList(prefix, a.size() - suffix), b.subList(prefix, b.size() - suffix));
+        ops.append(middle);
+        ops.append(" ".repeat(suffix));
+        if (middle.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        int oldLine = 0;
+        int newLine = 0;
+        while (i < ops.length()) {
+            if (ops.charAt(i) == ' ') {
+                i++;
+                oldLine++;
+                newLine++;
+                continue;
+            }
+            // A hunk starts 'context' lines before this change and runs until a gap of more than 2 * context
+            int start = Math.max(0, i - context);
+            int end = i;
+            int gap = 0;
+            for (int j = i; j < ops.length() && gap <= 2 * context; j++) {
+                if (ops.charAt(j) == ' ') {
+                    gap++;
+                } else {
+                    gap = 0;
+                    end = j + 1;
+                }
+            }
+            end = Math.min(ops.length(), end + context);
+            int oldStart = oldLine - (i - start);
+            int newStart = newLine - (i - start);
+            int oldCount = 0;
+            int newCount = 0;
+            for (int j = start; j < end; j++) {
+                if (ops.charAt(j) != '+') oldCount++;
+                if (ops.charAt(j) != '-') newCount++;
+            }
+            out.append("@@ -").append(range(oldStart, oldCount)).append(" +").append(range(newStart, newCount)).append(" @@\n");
+            int x = oldStart;
+            int y = newStart;
+            for (int j = start; j < end; j++) {
+                char op = ops.charAt(j);
+                String line = op == '+' ? b.get(y) : a.get(x);
+                if (op != '+') x++;
+                if (op != '-') y++;
+                appendLine(out, op, line);
+            }
+            oldLine = x;
+            newLine = y;
+            i = end;
+        }
+        return out.toString();
+    }
+
+    private static String range(int start, int count) {
+        // Empty ranges name the line before them, as in diff -u
+        return count == 0 ? start + ",0" : count == 1 ? String.valueOf(start + 1) : (start + 1) + "," + count;
+    }
+
+    private static void appendLine(StringBuilder out, char op, String line) {
+        int end = line.length();
+        boolean terminated = end > 0 && line.charAt(end - 1) == '\n';
+        if (terminated) end--;
+        if (terminated && end > 0 && line.charAt(end - 1) == '\r') end--;
+        out.append(op).append(line, 0, end).append('\n');
+        if (!terminated) {
+            out.append(NO_NEWLINE).append('\n');
+        }
+    }
+
+    // Myers' O(ND) diff: ' ', '-' and '+' per line of the edit. Only the diagonals reached at each step are kept
+    private static String editScript(List<String> a, List<String> b) {
+        int n = a.size();
+        int m = b.size();
+        if (n == 0 || m == 0) {
+            return "-".repeat(n) + "+".repeat(m);
+        }
+        int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = n + m;
+        int[] v = new int[2 * (n + m) + 2];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])
+                        ? v[offset + k + 1]
+                        : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.get(x).equals(b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+                    return backtrack(trace, a, b);
+                }
+            }
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+        }
+        return "-".repeat(n) + "+".repeat(m);
+    }
+
+    private static String backtrack(List<int[]> trace, List<String> a, List<String> b) {
+        StringBuilder ops = new StringBuilder();
+        int x = a.size();
+        int y = b.size();
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] previous = trace.get(d - 1);
+            int k = x - y;
+            boolean down = k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]);
+            int previousK = down ? k + 1 : k - 1;
+            int previousX = previous[previousK + d - 1];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                ops.append(' ');
+                x--;
+                y--;
+            }
+            ops.append(down ? '+' : '-');
+            x = previousX;
+            y = previousY;
+        }
+        while (x > 0 && y > 0) {
+            ops.append(' ');
+            x--;
+            y--;
+        }
+        return ops.reverse().toString();
+    }
+
+    // Lines without their terminators; a final terminator does not start another line
+    private static List<String> lines(CharSequence text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                int end = i > start && text.charAt(i - 1) == '\r' ? i - 1 : i;
+                lines.add(text.subSequence(start, end).toString());
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.subSequence(start, text.length()).toString());
+        }
+        return lines;
+    }
+
+    // The terminator of each of lines(text), "\n" or "\r\n"; null for a last line without one
+    private static List<String> terminators(CharSequence text) {
+        List<String> terminators = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                terminators.add(i > start && text.charAt(i - 1) == '\r' ? "\r\n" : "\n");
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            terminators.add(null);
+        }
+        return terminators;
+    }
+
+    private static List<String> linesWithTerminators(CharSequence text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.subSequence(start, i + 1).toString());
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.subSequence(start, text.length()).toString());
+        }
+        return lines;
+    }
+
+    private static final class Match {
+        private final int position;
+        // Context lines left out at each end
+        private final int head;
+        private final int tail;
+
+        private Match(int position, int head, int tail) {
+            this.position = position;
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+
+    private static final class Hunk {
+        // 1-based, or 0 when the header has no usable line numbers
+        private final int oldStart;
+        private final int oldCount;
+        private final StringBuilder ops = new StringBuilder();
+        private final List<String> texts = new ArrayList<>();
+        private boolean oldNoNewline;
+        private boolean newNoNewline;
+
+        private Hunk(String header) {
+            Matcher matcher = HUNK_HEADER.matcher(header);
+            boolean numbered = matcher.find();
+            oldCount = numbered ? (matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 1) : -1;
+            // An empty range names the line it follows
+            oldStart = numbered ? Integer.parseInt(matcher.group(1)) + (oldCount == 0 ? 1 : 0) : 0;
+        }
+
+        private void add(char op, String text) {
+            ops.append(op);
+            texts.add(text);
+        }
+
+        // Follows the line it applies to
+        private void noNewline() {
+            if (ops.length() == 0) {
+                return;
+            }
+            char last = ops.charAt(ops.length() - 1);
+            if (last != '+') oldNoNewline = true;
+            if (last != '-') newNoNewline = true;
+        }
+
+        private void dropTrailingBlankLines() {
+            int old = 0;
+            for (int i = 0; i < ops.length(); i++) {
+                if (ops.charAt(i) != '+') old++;
+            }
+            while (oldCount >= 0 && old > oldCount && ops.length() > 0
+                    && ops.charAt(ops.length() - 1) == ' ' && texts.get(texts.size() - 1).isEmpty()) {
+                ops.setLength(ops.length() - 1);
+                texts.remove(texts.size() - 1);
+                old--;
+            }
+        }
+
+        private int leadingContext() {
+            int count = 0;
+            while (count < ops.length() && ops.charAt(count) == ' ') count++;
+            return count;
+        }
+
+        private int trailingContext() {
+            int count = 0;
+            while (count < ops.length() && ops.charAt(ops.length() - 1 - count) == ' ') count++;
+            return count;
+        }
+
+        private Match find(List<String> lines, int from, int delta) {
+            int leading = leadingContext();
+            int trailing = trailingContext();
+            for (int fuzz = 0; fuzz <= MAX_FUZZ; fuzz++) {
+                // Context-only hunks change nothing and can't lose all their context
+                int head = Math.min(fuzz, leading);
+                int tail = Math.min(fuzz, trailing);
+                if (fuzz > 0 && head == 0 && tail == 0 || head + tail >= ops.length()) {
+                    break;
+                }
+                int expected = oldStart > 0 ? Math.max(from, oldStart - 1 + delta + head) : from;
+                for (boolean exact : new boolean[]{true, false}) {
+                    int position = nearest(lines, from, expected, head, ops.length() - tail, exact);
+                    if (position >= 0) {
+                        return new Match(position, head, tail);
+                    }
+                }
+            }
+            return null;
+        }
+
+        // Start of the match of ops[lo, hi) closest to 'expected', at or after 'from'; -1 if none
+        private int nearest(List<String> lines, int from, int expected, int lo, int hi, boolean exact) {
+            int length = 0;
+            for (int i = lo; i < hi; i++) {
+                if (ops.charAt(i) != '+') length++;
+            }
+            int last = lines.size() - length;
+            if (last < from) {
+                return -1;
+            }
+            if (length == 0) {
+                // Pure insertion: only the line number says where
+                return Math.min(expected, lines.size());
+            }
+            expected = Math.min(expected, last);
+            for (int distance = 0; expected - distance >= from || expected + distance <= last; distance++) {
+                if (expected - distance >= from && matches(lines, expected - distance, lo, hi, exact)) {
+                    return expected - distance;
+                }
+                if (distance > 0 && expected + distance <= last && matches(lines, expected + distance, lo, hi, exact)) {
+                    return expected + distance;
+                }
+            }
+            return -1;
+        }
+
+        private boolean matches(List<String> lines, int position, int lo, int hi, boolean exact) {
+            int line = position;
+            for (int i = lo; i < hi; i++) {
+                if (ops.charAt(i) == '+') {
+                    continue;
+                }
+                String actual = lines.get(line++);
+                String wanted = texts.get(i);
+                if (exact ? !actual.equals(wanted) : !normalizeWhitespace(actual).equals(normalizeWhitespace(wanted))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Appends the replacement for the matched lines; context lines keep the file's own text and terminator.
+        // Added lines take the terminators of the lines they replace, in order, and null past those. Returns the
+        // index of the first line after the match
+        private int apply(List<String> lines, List<String> terminators, Match match, List<String> result,
+                          List<String> resultTerminators) {
+            int hi = ops.length() - match.tail;
+            int line = match.position;
+            Deque<String> removed = new ArrayDeque<>();
+            for (int i = match.head; i < hi; i++) {
+                char op = ops.charAt(i);
+                if (op == ' ') {
+                    removed.clear();
+                    resultTerminators.add(terminators.get(line));
+                    result.add(lines.get(line++));
+                } else if (op == '-') {
+                    // A last line without a terminator has none to pass on
+                    String terminator = terminators.get(line++);
+                    if (terminator != null) {
+                        removed.add(terminator);
+                    }
+                } else {
+                    result.add(texts.get(i));
+                    resultTerminators.add(removed.poll());
+                }
+            }
+            return line;
+        }
+
+        private static String normalizeWhitespace(String line) {
+            return line.strip().replaceAll("\\s+", " ");
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package dev.zerr.lmpactions;
+
+import jdk.jfr.*;
+
+// One stretch of a phase; per-file phases are recorded once per file, so short ones fall under the threshold
+@Name("dev.zerr.lmpactions.Phase")
+@Label("LMP Phase")
+@Category("LMP Actions")
+@Description("Time spent in one phase of a pack or extract")
+@Threshold("1 ms")
+class LmpPhaseEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Phase")
+    String phase;
+}
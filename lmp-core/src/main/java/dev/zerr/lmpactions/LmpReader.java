@@ -0,0 +1,261 @@
+package dev.zerr.lmpactions;
+
+import java.io.IOException;
+
+public class LmpReader {
+
+    public enum Event {
+        FILE_START,
+        CONTENT,
+        FILE_END,
+        END
+    }
+
+    static final String START_MARKER = "[FILE_START: ";
+    static final String END_MARKER = "[FILE_END: ";
+    // Opens a reference block: its body is the path of an earlier file with the same content
+    static final String SAME_MARKER = "[FILE_SAME: ";
+    // Opens a block of unified diff hunks against the existing file; closed by FILE_END like any other block
+    static final String PATCH_MARKER = "[FILE_PATCH: ";
+
+    private static final int WRITE_CHUNK = 8192;
+
+    private final CharSequence source;
+    private final int limit;
+    private int pos;
+
+    private boolean inFile;
+    private String path;
+    private int headerStart;
+    private int bodyStart;
+    private int bodyEnd;
+    private int blockEnd;
+    private int lineStart;
+    private int lineEnd;
+    private boolean bodyVerbatim;
+    private boolean patch;
+    private boolean reference;
+
+    public LmpReader(CharSequence source) {
+        this(source, 0, source.length());
+    }
+
+    // 'from' must be the start of a line; parsing begins outside of any file block
+    public LmpReader(CharSequence source, int from, int to) {
+        this.source = source;
+        this.pos = from;
+        this.limit = to;
+    }
+
+    public Event next() {
+        while (pos < limit) {
+            int start = pos;
+            int end = start;
+            while (end < limit) {
+                char c = source.charAt(end);
+                if (c == '\n' || c == '\r') break;
+                end++;
+            }
+            // Same line terminators as BufferedReader.readLine: \n, \r or \r\n
+            boolean newlineTerminated = false;
+            int next = end;
+            if (next < limit) {
+                if (source.charAt(next) == '\r') {
+                    next++;
+                    if (next < limit && source.charAt(next) == '\n') next++;
+                } else {
+                    next++;
+                    newlineTerminated = true;
+                }
+            }
+            pos = next;
+
+            if (!inFile) {
+                String marker = startMarker(source, start, end);
+                if (marker != null) {
+                    path = markerPath(source, marker, start, end);
+                    patch = marker == PATCH_MARKER;
+                    reference = marker == SAME_MARKER;
+                    inFile = true;
+                    headerStart = start;
+                    bodyStart = next;
+                    bodyVerbatim = true;
+                    return Event.FILE_START;
+                }
+                continue;
+            }
+            if (isMarker(source, END_MARKER, start, end)) {
+                if (markerPathEquals(source, END_MARKER, start, end, path)) {
+                    inFile = false;
+                    bodyEnd = start;
+                    blockEnd = next;
+                    return Event.FILE_END;
+                }
+                // End markers for another path are dropped from the body
+                bodyVerbatim = false;
+                continue;
+            }
+            if (!newlineTerminated) {
+                bodyVerbatim = false;
+            }
+            lineStart = start;
+            lineEnd = end;
+            return Event.CONTENT;
+        }
+        return Event.END;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    // The current block is a FILE_PATCH
+    public boolean isPatch() {
+        return patch;
+    }
+
+    // The current block is a FILE_SAME reference
+    public boolean isReference() {
+        return reference;
+    }
+
+    public boolean isInFile() {
+        return inFile;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getHeaderStart() {
+        return headerStart;
+    }
+
+    public int getBodyStart() {
+        return bodyStart;
+    }
+
+    public int getBodyEnd() {
+        return bodyEnd;
+    }
+
+    public int getBlockEnd() {
+        return blockEnd;
+    }
+
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    // True when the body is exactly source[bodyStart, bodyEnd), i.e. it needs no line ending normalization
+    public boolean isBodyVerbatim() {
+        return bodyVerbatim;
+    }
+
+    public String getBody() {
+        if (bodyVerbatim) {
+            return source.subSequence(bodyStart, bodyEnd).toString();
+        }
+        StringBuilder body = new StringBuilder(bodyEnd - bodyStart);
+        try {
+            writeBody(source, bodyStart, bodyEnd, false, body);
+        } catch (IOException e) {
+            // Should not happen with StringBuilder
+        }
+        return body.toString();
+    }
+
+    public void writeBody(Appendable out) throws IOException {
+        writeBody(source, bodyStart, bodyEnd, bodyVerbatim, out);
+    }
+
+    static void writeBody(CharSequence source, int bodyStart, int bodyEnd, boolean verbatim, Appendable out) throws IOException {
+        if (verbatim) {
+            for (int i = bodyStart; i < bodyEnd; i += WRITE_CHUNK) {
+                out.append(source, i, Math.min(i + WRITE_CHUNK, bodyEnd));
+            }
+            return;
+        }
+        int pos = bodyStart;
+        while (pos < bodyEnd) {
+            int end = pos;
+            while (end < bodyEnd) {
+                char c = source.charAt(end);
+                if (c == '\n' || c == '\r') break;
+                end++;
+            }
+            // Any end marker left inside a closed body belongs to another path
+            if (!isMarker(source, END_MARKER, pos, end)) {
+                out.append(source, pos, end).append('\n');
+            }
+            pos = end;
+            if (pos < bodyEnd) {
+                if (source.charAt(pos) == '\r') {
+                    pos++;
+                    if (pos < bodyEnd && source.charAt(pos) == '\n') pos++;
+                } else {
+                    pos++;
+                }
+            }
+        }
+    }
+
+    // Plain character equivalent of "^\[FILE_START: .+]$" (or FILE_END) on a single line
+    static boolean isMarker(CharSequence source, String marker, int start, int end) {
+        int length = marker.length();
+        if (end - start < length + 2 || source.charAt(end - 1) != ']') {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(start + i) != marker.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // START_MARKER or PATCH_MARKER if the line opens a block, otherwise null
+    static String startMarker(CharSequence source, int start, int end) {
+        if (isMarker(source, START_MARKER, start, end)) {
+            return START_MARKER;
+        }
+        if (isMarker(source, PATCH_MARKER, start, end)) {
+            return PATCH_MARKER;
+        }
+        return isMarker(source, SAME_MARKER, start, end) ? SAME_MARKER : null;
+    }
+
+    static String markerPath(CharSequence source, String marker, int start, int end) {
+        int from = trimStart(source, start + marker.length(), end - 1);
+        int to = trimEnd(source, from, end - 1);
+        return source.subSequence(from, to).toString();
+    }
+
+    static boolean markerPathEquals(CharSequence source, String marker, int start, int end, String path) {
+        int from = trimStart(source, start + marker.length(), end - 1);
+        int to = trimEnd(source, from, end - 1);
+        if (to - from != path.length()) {
+            return false;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            if (source.charAt(from + i) != path.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int trimStart(CharSequence source, int from, int to) {
+        while (from < to && source.charAt(from) <= ' ') from++;
+        return from;
+    }
+
+    private static int trimEnd(CharSequence source, int from, int to) {
+        while (to > from && source.charAt(to - 1) <= ' ') to--;
+        return to;
+    }
+}
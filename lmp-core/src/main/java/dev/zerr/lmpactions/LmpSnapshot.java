@@ -0,0 +1,169 @@
+package dev.zerr.lmpactions;
+
+import java.io.IOException;
+import java.util.*;
+
+// Rendered chunks of every included file under one root, by LMP path. Callers re-render files as they change, so
+// writing the whole tree out is a concatenation that reads no file. Sorted like a pack of the same files
+public class LmpSnapshot {
+
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    private int files;
+    private long chars;
+
+    // tokens is -1 when no estimator is configured; digest is null when the file is not deduplicated
+    public synchronized void put(String relPath, String text, long tokens, String digest) {
+        replace(relPath, new Entry(text, tokens, digest, null));
+    }
+
+    public synchronized void skip(String relPath, String reason) {
+        replace(relPath, new Entry(null, -1, null, reason));
+    }
+
+    public synchronized void remove(String relPath) {
+        replace(relPath, null);
+    }
+
+    // Removes relPath and everything below it, for a deleted, moved or renamed directory; "" is the root
+    public synchronized void removeTree(String relPath) {
+        if (relPath.isEmpty()) {
+            clear();
+            return;
+        }
+        remove(relPath);
+        String prefix = relPath + "/";
+        Iterator<Entry> below = entries.subMap(prefix, prefix + Character.MAX_VALUE).values().iterator();
+        while (below.hasNext()) {
+            forget(below.next());
+            below.remove();
+        }
+    }
+
+    // Replaces the trees at relPaths with what rendered has for them, in one step, so a concurrent writeTo sees the
+    // files either before or after the change
+    public void update(Collection<String> relPaths, LmpSnapshot rendered) {
+        synchronized (rendered) {
+            synchronized (this) {
+                for (String relPath : relPaths) {
+                    removeTree(relPath);
+                }
+                for (Map.Entry<String, Entry> entry : rendered.entries.entrySet()) {
+                    replace(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        files = 0;
+        chars = 0;
+    }
+
+    // The entries as they are now, unaffected by later changes to this snapshot. Entries are shared, not copied
+    public synchronized LmpSnapshot copy() {
+        LmpSnapshot copy = new LmpSnapshot();
+        copy.entries.putAll(entries);
+        copy.files = files;
+        copy.chars = chars;
+        return copy;
+    }
+
+    public synchronized boolean contains(String relPath) {
+        return entries.containsKey(relPath);
+    }
+
+    // Files with a chunk; skipped files are not counted
+    public synchronized int getFileCount() {
+        return files;
+    }
+
+    // Total length of the chunks, about the length of the written snapshot
+    public synchronized long getChars() {
+        return chars;
+    }
+
+    // Writes the chunks in path order as they were when called, recording them in report as a pack would. Bodies seen
+    // before are written as references when they have a digest. Under STOP, the file that would exceed a positive
+    // tokenBudget and every file after it are left out
+    public void writeTo(LmpWriter out, LmpPackReport report, long tokenBudget, LmpPackOptions.BudgetPolicy policy)
+            throws IOException {
+        List<Map.Entry<String, Entry>> chunks;
+        synchronized (this) {
+            chunks = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                chunks.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        Map<String, String> firstByDigest = new HashMap<>();
+        boolean stopped = false;
+        for (Map.Entry<String, Entry> chunk : chunks) {
+            String relPath = chunk.getKey();
+            Entry entry = chunk.getValue();
+            if (entry.skipReason != null) {
+                report.fileSkipped(relPath, entry.skipReason);
+                continue;
+            }
+            if (stopped) {
+                report.fileSkipped(relPath, "token budget of " + tokenBudget + " reached");
+                continue;
+            }
+            String originalPath = entry.digest != null ? firstByDigest.putIfAbsent(entry.digest, relPath) : null;
+            if (originalPath != null) {
+                out.writeReference(relPath, originalPath);
+                report.fileWritten(relPath, -1);
+                report.fileDeduplicated(relPath, originalPath);
+                continue;
+            }
+            boolean overBudget = tokenBudget > 0 && entry.tokens >= 0 && report.getTotalTokens() + entry.tokens > tokenBudget;
+            if (overBudget && policy == LmpPackOptions.BudgetPolicy.STOP) {
+                report.budgetExceeded(tokenBudget);
+                report.fileSkipped(relPath, "token budget of " + tokenBudget + " reached");
+                stopped = true;
+                continue;
+            }
+            out.write(entry.text);
+            report.fileWritten(relPath, entry.tokens);
+            if (overBudget) {
+                report.budgetExceeded(tokenBudget);
+            }
+        }
+    }
+
+    private void replace(String relPath, Entry entry) {
+        Entry previous = entry != null ? entries.put(relPath, entry) : entries.remove(relPath);
+        if (previous != null) {
+            forget(previous);
+        }
+        if (entry != null && entry.text != null) {
+            files++;
+            chars += entry.text.length();
+        }
+    }
+
+    private void forget(Entry entry) {
+        if (entry.text != null) {
+            files--;
+            chars -= entry.text.length();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return files + " files, " + (entries.size() - files) + " skipped, " + chars + " chars";
+    }
+
+    private static class Entry {
+        private final String text;
+        private final long tokens;
+        private final String digest;
+        private final String skipReason;
+
+        private Entry(String text, long tokens, String digest, String skipReason) {
+            this.text = text;
+            this.tokens = tokens;
+            this.digest = digest;
+            this.skipReason = skipReason;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package dev.zerr.lmpactions;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+// A file to pack, wherever its content comes from: disk, or the IDE's documents and VFS cache
+public abstract class LmpSourceFile {
+
+    private final String relPath;
+
+    protected LmpSourceFile(String relPath) {
+        this.relPath = relPath;
+    }
+
+    public static LmpSourceFile of(Path path, String relPath, BasicFileAttributes attrs) {
+        return new PathFile(path, relPath, attrs);
+    }
+
+    // Stamp of a file on disk: its modification time. Caches compare it together with the size, never mixed into one
+    // number, where two different versions could collide
+    public static long stamp(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    public final String getRelPath() {
+        return relPath;
+    }
+
+    // Identifies the file across packs; keys the token and chunk caches
+    public abstract String getKey();
+
+    // Changes whenever the content changes, possibly along with the size only; -1 keeps the file out of the caches
+    public abstract long getStamp();
+
+    public abstract long getSize();
+
+    public abstract LmpFileClassifier.Classification classify(LmpFileClassifier classifier) throws IOException;
+
+    // Writes the whole [FILE_START]...[FILE_END] block; charset comes from a text classification
+    public abstract void write(LmpWriter out, Charset charset, LmpTokenEstimator.Counter counter) throws IOException;
+
+    private static class PathFile extends LmpSourceFile {
+        private final Path path;
+        private final long size;
+        private final long stamp;
+
+        // Null attributes leave the file unreadable, and never served from a cache
+        private PathFile(Path path, String relPath, BasicFileAttributes attrs) {
+            super(relPath);
+            this.path = path;
+            this.size = attrs != null ? attrs.size() : Long.MAX_VALUE;
+            this.stamp = attrs != null ? stamp(attrs) : -1;
+        }
+
+        @Override
+        public String getKey() {
+            return path.toString();
+        }
+
+        @Override
+        public long getStamp() {
+            return stamp;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public LmpFileClassifier.Classification classify(LmpFileClassifier classifier) throws IOException {
+            return classifier.classify(path);
+        }
+
+        @Override
+        public void write(LmpWriter out, Charset charset, LmpTokenEstimator.Counter counter) throws IOException {
+            out.writeFile(getRelPath(), path, charset, counter);
+        }
+    }
+}
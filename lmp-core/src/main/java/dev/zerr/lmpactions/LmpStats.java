@@ -0,0 +1,178 @@
+package dev.zerr.lmpactions;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and phase timings of one operation, also recorded as JFR events when a recording is running.
+// Phases that run on several threads add up their time, so their sum can exceed the wall time
+public class LmpStats {
+
+    public enum Phase {
+        WALK, FILTER, RENDER, WRITE, CLIPBOARD, PARSE, STAGE, COMMIT;
+
+        public String getLabel() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final String operation;
+    private final long startNanos = System.nanoTime();
+    private final LmpOperationEvent operationEvent = new LmpOperationEvent();
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final LongAdder filesScanned = new LongAdder();
+    private final LongAdder filesSkipped = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAccumulator peakBuffer = new LongAccumulator(Math::max, 0);
+    private long wallNanos = -1;
+
+    public LmpStats(String operation) {
+        this.operation = operation;
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+        operationEvent.begin();
+    }
+
+    public Span span(Phase phase) {
+        return new Span(phase);
+    }
+
+    public void filesScanned(long count) {
+        filesScanned.add(count);
+    }
+
+    public void fileSkipped() {
+        filesSkipped.increment();
+    }
+
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    // Packs count the LMP text they produce, in chars; extractions the bytes they stage
+    public void bytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    // Largest single buffer held in memory, e.g. a rendered chunk or the whole clipboard text
+    public void bufferUsed(long size) {
+        peakBuffer.accumulate(size);
+    }
+
+    // Fixes the wall time and records the summary event; later calls do nothing
+    public synchronized void finish() {
+        if (wallNanos >= 0) {
+            return;
+        }
+        wallNanos = System.nanoTime() - startNanos;
+        operationEvent.end();
+        if (operationEvent.shouldCommit()) {
+            operationEvent.operation = operation;
+            operationEvent.filesScanned = getFilesScanned();
+            operationEvent.filesSkipped = getFilesSkipped();
+            operationEvent.bytesRead = getBytesRead();
+            operationEvent.bytesWritten = getBytesWritten();
+            operationEvent.peakBuffer = getPeakBuffer();
+            operationEvent.commit();
+        }
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    // Until finish, the time elapsed so far
+    public synchronized long getWallNanos() {
+        return wallNanos >= 0 ? wallNanos : System.nanoTime() - startNanos;
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    public long getFilesScanned() {
+        return filesScanned.sum();
+    }
+
+    public long getFilesSkipped() {
+        return filesSkipped.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getPeakBuffer() {
+        return peakBuffer.get();
+    }
+
+    // One short line, e.g. "1204 files, 3 skipped, 4.1 MB in 380 ms"
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(getFilesScanned()).append(getFilesScanned() == 1 ? " file" : " files");
+        if (getFilesSkipped() > 0) {
+            summary.append(", ").append(getFilesSkipped()).append(" skipped");
+        }
+        summary.append(", ").append(formatSize(getBytesWritten()));
+        summary.append(" in ").append(formatNanos(getWallNanos()));
+        return summary.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(operation).append(": ").append(getSummary());
+        text.append(" (read ").append(formatSize(getBytesRead()));
+        text.append(", peak buffer ").append(formatSize(getPeakBuffer()));
+        for (Phase phase : Phase.values()) {
+            long nanos = getPhaseNanos(phase);
+            if (nanos > 0) {
+                text.append(", ").append(phase.getLabel()).append(' ').append(formatNanos(nanos));
+            }
+        }
+        return text.append(')').toString();
+    }
+
+    static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    static String formatNanos(long nanos) {
+        long millis = nanos / 1_000_000;
+        return millis < 10_000 ? millis + " ms" : String.format(Locale.ROOT, "%.1f s", millis / 1000.0);
+    }
+
+    // Times one stretch of a phase; meant for try-with-resources
+    public final class Span implements AutoCloseable {
+        private final Phase phase;
+        private final long start = System.nanoTime();
+        private final LmpPhaseEvent event = new LmpPhaseEvent();
+
+        private Span(Phase phase) {
+            this.phase = phase;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            phaseNanos[phase.ordinal()].add(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.phase = phase.getLabel();
+                event.commit();
+            }
+        }
+    }
+}
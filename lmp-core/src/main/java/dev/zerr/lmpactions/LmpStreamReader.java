@@ -0,0 +1,154 @@
+package dev.zerr.lmpactions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+// Pull parser over a Reader with the same rules as LmpReader, holding only a buffer and the current line in memory
+public class LmpStreamReader implements Closeable {
+
+    // Longer lines can't be markers in practice; they are streamed through without being buffered whole
+    private static final int MAX_MARKER_LINE = 64 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean pendingCarriageReturn;
+
+    private final StringBuilder line = new StringBuilder();
+    // The current line outgrew MAX_MARKER_LINE and was already passed on
+    private boolean lineStreamed;
+
+    private boolean inFile;
+    private String path;
+    private boolean patch;
+    private boolean reference;
+
+    public LmpStreamReader(Reader in) {
+        this.in = in;
+    }
+
+    // Moves to the next FILE_START, FILE_PATCH or FILE_SAME, discarding the rest of the current block; null at the end of input
+    public String nextFile() throws IOException {
+        if (inFile) {
+            readBody(null);
+        }
+        while (readLine(null)) {
+            String marker = lineStreamed ? null : LmpReader.startMarker(line, 0, line.length());
+            if (marker != null) {
+                path = LmpReader.markerPath(line, marker, 0, line.length());
+                patch = marker == LmpReader.PATCH_MARKER;
+                reference = marker == LmpReader.SAME_MARKER;
+                inFile = true;
+                return path;
+            }
+        }
+        return null;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // The current block is a FILE_PATCH
+    public boolean isPatch() {
+        return patch;
+    }
+
+    // The current block is a FILE_SAME reference
+    public boolean isReference() {
+        return reference;
+    }
+
+    // Streams the body of the current block to out, or discards it if out is null
+    public void readBody(Writer out) throws IOException {
+        while (readLine(out)) {
+            if (lineStreamed) {
+                continue;
+            }
+            if (LmpReader.isMarker(line, LmpReader.END_MARKER, 0, line.length())) {
+                if (LmpReader.markerPathEquals(line, LmpReader.END_MARKER, 0, line.length(), path)) {
+                    inFile = false;
+                    return;
+                }
+                // End markers for another path are dropped from the body
+                continue;
+            }
+            if (out != null) {
+                out.append(line).append('\n');
+            }
+        }
+        throw new IOException("Unclosed file declaration: " + path);
+    }
+
+    // Reads one line (terminated by \n, \r or \r\n) into 'line'; false at the end of input
+    private boolean readLine(Writer out) throws IOException {
+        line.setLength(0);
+        lineStreamed = false;
+        boolean any = false;
+        while (true) {
+            if (pos == limit && !fill()) {
+                if (lineStreamed && out != null) {
+                    out.write('\n');
+                }
+                return any;
+            }
+            if (pendingCarriageReturn) {
+                pendingCarriageReturn = false;
+                if (buffer[pos] == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+            any = true;
+            int start = pos;
+            while (pos < limit && buffer[pos] != '\n' && buffer[pos] != '\r') {
+                pos++;
+            }
+            append(start, pos, out);
+            if (pos < limit) {
+                pendingCarriageReturn = buffer[pos] == '\r';
+                pos++;
+                if (lineStreamed && out != null) {
+                    out.write('\n');
+                }
+                return true;
+            }
+        }
+    }
+
+    private void append(int start, int end, Writer out) throws IOException {
+        if (lineStreamed) {
+            if (out != null) {
+                out.write(buffer, start, end - start);
+            }
+            return;
+        }
+        line.append(buffer, start, end - start);
+        if (line.length() > MAX_MARKER_LINE) {
+            lineStreamed = true;
+            if (out != null) {
+                out.append(line);
+            }
+            line.setLength(0);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = in.read(buffer);
+        } while (read == 0);
+        pos = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,52 @@
+package dev.zerr.lmpactions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LmpTokenCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private final Map<String, Entry> entries;
+
+    public LmpTokenCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public LmpTokenCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // Cached estimate for the file at key, or -1 if it changed (different stamp or size) or was never counted in this mode
+    public synchronized long get(String key, long stamp, long size, LmpTokenEstimator.Mode mode) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.stamp == stamp && entry.size == size && entry.mode == mode ? entry.tokens : -1;
+    }
+
+    public synchronized void put(String key, long stamp, long size, LmpTokenEstimator.Mode mode, long tokens) {
+        entries.put(key, new Entry(stamp, size, mode, tokens));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static class Entry {
+        private final long stamp;
+        private final long size;
+        private final LmpTokenEstimator.Mode mode;
+        private final long tokens;
+
+        private Entry(long stamp, long size, LmpTokenEstimator.Mode mode, long tokens) {
+            this.stamp = stamp;
+            this.size = size;
+            this.mode = mode;
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package dev.zerr.lmpactions;
+
+public class LmpTokenEstimator {
+
+    public enum Mode {
+        // Splits text like a BPE pre-tokenizer (words, sub-words, digit groups, symbol runs) and prices each piece
+        APPROX_BPE,
+        // Weighs each character by its class; cheaper and slightly less accurate
+        CHAR_CLASS
+    }
+
+    private final Mode mode;
+
+    public LmpTokenEstimator(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long estimate(CharSequence text) {
+        Counter counter = newCounter();
+        counter.feed(text, 0, text.length());
+        return counter.finish();
+    }
+
+    public Counter newCounter() {
+        return mode == Mode.APPROX_BPE ? new BpeCounter() : new CharClassCounter();
+    }
+
+    // Incremental, allocation-free estimate over text fed in arbitrary chunks
+    public abstract static class Counter {
+        public abstract void feed(char c);
+
+        public void feed(char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                feed(chars[i]);
+            }
+        }
+
+        public void feed(CharSequence text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                feed(text.charAt(i));
+            }
+        }
+
+        // Ends the current run; the counter can keep being fed afterwards
+        public abstract long finish();
+    }
+
+    private static final int OTHER = 0;
+    private static final int LETTER = 1;
+    private static final int DIGIT = 2;
+    private static final int SPACE = 3;
+    private static final int NEWLINE = 4;
+    private static final int SYMBOL = 5;
+    private static final int WIDE = 6;
+
+    private static int classOf(char c) {
+        if (c < 0x80) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) return LETTER;
+            if (c >= '0' && c <= '9') return DIGIT;
+            if (c == '\n' || c == '\r') return NEWLINE;
+            if (c == ' ' || c == '\t') return SPACE;
+            return c > ' ' ? SYMBOL : OTHER;
+        }
+        // CJK and most other scripts above this range cost about one token per character
+        if (c >= 0x2E80) return WIDE;
+        return Character.isLetter(c) ? LETTER : SYMBOL;
+    }
+
+    private static class BpeCounter extends Counter {
+        // Common words up to this length are usually a single token
+        private static final int WHOLE_WORD_LENGTH = 6;
+        private static final int SUBWORD_LENGTH = 4;
+        private static final int DIGIT_GROUP = 3;
+        private static final int SYMBOL_GROUP = 2;
+
+        private long tokens;
+        private int runClass = OTHER;
+        private int runLength;
+        private boolean lastUpper;
+
+        @Override
+        public void feed(char c) {
+            int charClass = classOf(c);
+            if (charClass == LETTER && runClass == LETTER) {
+                boolean upper = Character.isUpperCase(c);
+                // camelCase boundaries start a new sub-word
+                if (upper && !lastUpper) {
+                    endRun();
+                    runClass = LETTER;
+                }
+                lastUpper = upper;
+                runLength++;
+                return;
+            }
+            if (charClass == runClass && charClass != WIDE && charClass != OTHER) {
+                runLength++;
+                return;
+            }
+            // A single space is merged into the word that follows it
+            boolean leadingSpace = runClass == SPACE && runLength == 1 && (charClass == LETTER || charClass == DIGIT);
+            if (!leadingSpace) {
+                endRun();
+            }
+            runClass = charClass;
+            runLength = 1;
+            lastUpper = Character.isUpperCase(c);
+        }
+
+        private void endRun() {
+            switch (runClass) {
+                case LETTER:
+                    tokens += runLength <= WHOLE_WORD_LENGTH ? 1 : 1 + (runLength - WHOLE_WORD_LENGTH + SUBWORD_LENGTH - 1) / SUBWORD_LENGTH;
+                    break;
+                case DIGIT:
+                    tokens += (runLength + DIGIT_GROUP - 1) / DIGIT_GROUP;
+                    break;
+                case SYMBOL:
+                    tokens += (runLength + SYMBOL_GROUP - 1) / SYMBOL_GROUP;
+                    break;
+                case SPACE:
+                case NEWLINE:
+                    tokens += 1;
+                    break;
+                case WIDE:
+                    tokens += runLength;
+                    break;
+                default:
+                    break;
+            }
+            runClass = OTHER;
+            runLength = 0;
+        }
+
+        @Override
+        public long finish() {
+            endRun();
+            return tokens;
+        }
+    }
+
+    private static class CharClassCounter extends Counter {
+        // Tokens per character, in hundredths
+        private static final int[] WEIGHTS = new int[7];
+
+        static {
+            WEIGHTS[OTHER] = 50;
+            WEIGHTS[LETTER] = 25;
+            WEIGHTS[DIGIT] = 34;
+            WEIGHTS[SPACE] = 5;
+            WEIGHTS[NEWLINE] = 50;
+            WEIGHTS[SYMBOL] = 60;
+            WEIGHTS[WIDE] = 100;
+        }
+
+        private long weight;
+
+        @Override
+        public void feed(char c) {
+            weight += WEIGHTS[classOf(c)];
+        }
+
+        @Override
+        public long finish() {
+            return (weight + 99) / 100;
+        }
+    }
+}
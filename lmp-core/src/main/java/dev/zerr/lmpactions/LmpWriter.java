@@ -0,0 +1,146 @@
+package dev.zerr.lmpactions;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LmpWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private long charsWritten;
+
+    public LmpWriter(Writer out) {
+        this.out = out;
+    }
+
+    public static LmpWriter of(OutputStream out) {
+        return new LmpWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    public static LmpWriter of(WritableByteChannel channel) {
+        return new LmpWriter(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8)));
+    }
+
+    public void writeFile(String relPath, Path file) throws IOException {
+        // Strict decoder, same as Files.readString: malformed input still fails the copy
+        writeFile(relPath, file, StandardCharsets.UTF_8.newDecoder(), null);
+    }
+
+    // Decodes with the given charset, replacing malformed input instead of failing the whole copy
+    public void writeFile(String relPath, Path file, Charset charset) throws IOException {
+        writeFile(relPath, file, charset, null);
+    }
+
+    // Same, also feeding the body to a token counter as it streams by
+    public void writeFile(String relPath, Path file, Charset charset, LmpTokenEstimator.Counter counter) throws IOException {
+        writeFile(relPath, file, charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), counter);
+    }
+
+    // Content already loaded in memory, e.g. from the IDE's VFS cache
+    public void writeFile(String relPath, byte[] content, Charset charset, LmpTokenEstimator.Counter counter) throws IOException {
+        writeFile(relPath, new ByteArrayInputStream(content), charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), counter);
+    }
+
+    private void writeFile(String relPath, Path file, CharsetDecoder decoder, LmpTokenEstimator.Counter counter) throws IOException {
+        writeFile(relPath, Files.newInputStream(file), decoder, counter);
+    }
+
+    private void writeFile(String relPath, InputStream in, CharsetDecoder decoder, LmpTokenEstimator.Counter counter) throws IOException {
+        writeStart(relPath);
+        boolean endsWithNewline = false;
+        try (Reader reader = new InputStreamReader(in, decoder)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                if (read > 0) {
+                    out.write(buffer, 0, read);
+                    charsWritten += read;
+                    endsWithNewline = buffer[read - 1] == '\n';
+                    if (counter != null) {
+                        counter.feed(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        writeEnd(relPath, endsWithNewline);
+    }
+
+    public void writeFile(String relPath, CharSequence content) throws IOException {
+        writeFile(relPath, content, null);
+    }
+
+    public void writeFile(String relPath, CharSequence content, LmpTokenEstimator.Counter counter) throws IOException {
+        writeStart(relPath);
+        out.append(content);
+        charsWritten += content.length();
+        if (counter != null) {
+            counter.feed(content, 0, content.length());
+        }
+        writeEnd(relPath, content.length() > 0 && content.charAt(content.length() - 1) == '\n');
+    }
+
+    // A file whose content is that of an earlier file in the same LMP: a FILE_SAME block holding that file's path
+    public void writeReference(String relPath, String originalPath) throws IOException {
+        writeStart(LmpReader.SAME_MARKER, relPath);
+        write(originalPath);
+        write("\n");
+        writeEnd(relPath, true);
+    }
+
+    // Unified diff hunks against the file as the reader already has it, see LmpPatch.diff
+    public void writePatch(String relPath, CharSequence hunks) throws IOException {
+        writeStart(LmpReader.PATCH_MARKER, relPath);
+        write(hunks);
+        writeEnd(relPath, hunks.length() > 0 && hunks.charAt(hunks.length() - 1) == '\n');
+    }
+
+    public void write(CharSequence text) throws IOException {
+        out.append(text);
+        charsWritten += text.length();
+    }
+
+    public long getCharsWritten() {
+        return charsWritten;
+    }
+
+    private void writeStart(String relPath) throws IOException {
+        writeStart(LmpReader.START_MARKER, relPath);
+    }
+
+    private void writeStart(String marker, String relPath) throws IOException {
+        write(marker);
+        write(relPath);
+        write("]\n");
+    }
+
+    private void writeEnd(String relPath, boolean endsWithNewline) throws IOException {
+        if (!endsWithNewline) {
+            write("\n");
+        }
+        write("[FILE_END: ");
+        write(relPath);
+        write("]\n\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
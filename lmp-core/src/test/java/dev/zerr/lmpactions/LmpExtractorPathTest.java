@@ -0,0 +1,75 @@
+package dev.zerr.lmpactions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LmpExtractorPathTest {
+
+    private Path dir;
+    private Path dest;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("lmp-path-test");
+        dest = dir.resolve("out");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void pathsLeavingTheOutputDirectoryAreRejected() throws IOException {
+        String absolute = dir.resolve("absolute.txt").toAbsolutePath().toString();
+        for (String path : new String[]{"../escaped.txt", "a/../../escaped.txt", absolute, "."}) {
+            String lmp = "[FILE_START: ok.txt]\nok\n[FILE_END: ok.txt]\n"
+                    + "[FILE_START: " + path + "]\nevil\n[FILE_END: " + path + "]\n";
+            assertRejected(() -> new LmpExtractor().extract(lmp, dest));
+            assertRejected(() -> new LmpExtractor().extract(Files.writeString(dir.resolve("in.lmp"), lmp), dest));
+            assertRejected(() -> new LmpExtractor().extract(new StringReader(lmp), dest));
+            assertFalse(Files.exists(dir.resolve("escaped.txt")));
+            assertFalse(Files.exists(dir.resolve("absolute.txt")));
+            assertFalse(Files.exists(dest.resolve("ok.txt")));
+        }
+    }
+
+    @Test
+    public void dotDotInsideTheOutputDirectoryIsAllowed() throws IOException {
+        new LmpExtractor().extract("[FILE_START: a/../b.txt]\nb\n[FILE_END: a/../b.txt]\n", dest);
+        assertEquals("b\n", Files.readString(dest.resolve("b.txt")));
+    }
+
+    @Test
+    public void stagingDirectoriesAreExcluded() throws IOException {
+        Path staging = Files.createDirectories(dir.resolve(LmpExtractor.STAGING_PREFIX + "123"));
+        assertTrue(LmpExclusions.defaults(dir).isExcludedDirectory(staging));
+    }
+
+    private static void assertRejected(Extraction extraction) {
+        try {
+            extraction.run();
+            fail("Extraction outside the output directory was not rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("outside the output directory"));
+        }
+    }
+
+    private interface Extraction {
+        void run() throws IOException;
+    }
+}
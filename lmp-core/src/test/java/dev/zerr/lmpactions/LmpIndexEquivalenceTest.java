@@ -0,0 +1,127 @@
+package dev.zerr.lmpactions;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LmpIndexEquivalenceTest {
+
+    private static final String[] TERMINATORS = {"\n", "\n", "\n", "\r\n", "\r"};
+    // Edits that open, close or split blocks and line endings
+    private static final String[] SNIPPETS = {"", "x", "\n", "\r", "\r\n", "[FILE_START: f1]\n", "[FILE_END: f1]\n",
+            "[FILE_END: f2]", "[FILE_PATCH: f3]\n", "[FILE_SAME: f4]\nf1\n", "[FILE_", "]\n", "\n[FILE_END: f0]\r\n"};
+
+    @Test
+    public void parallelParseMatchesSequentialParse() {
+        for (int seed = 0; seed < 8; seed++) {
+            Random random = new Random(seed);
+            // Several MB, so the input is split into regions; long bodies with block start lines put region starts inside them
+            String source = lmp(random, 120, 3000);
+            for (int parallelism : new int[]{2, 4}) {
+                assertSameIndex("seed " + seed + ", parallelism " + parallelism,
+                        LmpIndex.parse(source), LmpIndex.parse(source, parallelism));
+            }
+        }
+    }
+
+    @Test
+    public void reindexMatchesFullParse() {
+        for (int seed = 0; seed < 40; seed++) {
+            Random random = new Random(seed);
+            String source = lmp(random, 20, 8);
+            LmpIndex index = LmpIndex.parse(source);
+            for (int edit = 0; edit < 200; edit++) {
+                int offset = random.nextInt(source.length() + 1);
+                // Half the edits start right after a line terminator, where blocks begin and end
+                if (random.nextBoolean()) {
+                    while (offset > 0 && offset < source.length()
+                            && source.charAt(offset - 1) != '\n' && source.charAt(offset - 1) != '\r') {
+                        offset++;
+                    }
+                }
+                int oldLength = random.nextInt(Math.min(source.length() - offset, 40) + 1);
+                String replacement = SNIPPETS[random.nextInt(SNIPPETS.length)];
+                source = source.substring(0, offset) + replacement + source.substring(offset + oldLength);
+
+                index = index.reindex(source, offset, oldLength, replacement.length());
+                assertSameIndex("seed " + seed + ", edit " + edit, LmpIndex.parse(source), index);
+            }
+        }
+    }
+
+    // Random blocks of every kind, with nested start lines, end lines for other paths, stray lines between blocks
+    // and sometimes a trailing block that is never closed
+    private static String lmp(Random random, int blocks, int maxLines) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < blocks; i++) {
+            if (random.nextInt(5) == 0) {
+                line(out, random, random.nextBoolean() ? "[FILE_END: " + path(random) + "]" : "stray text");
+                continue;
+            }
+            String path = path(random);
+            line(out, random, header(random, path));
+            body(out, random, random.nextInt(maxLines + 1));
+            line(out, random, "[FILE_END: " + path + "]");
+        }
+        if (random.nextBoolean()) {
+            line(out, random, header(random, path(random)));
+            body(out, random, random.nextInt(maxLines + 1));
+        }
+        // The last line may have no terminator at all
+        if (random.nextBoolean() && out.length() > 0 && out.charAt(out.length() - 1) == '\n') {
+            out.setLength(out.length() - 1);
+        }
+        return out.toString();
+    }
+
+    private static void body(StringBuilder out, Random random, int lines) {
+        for (int i = 0; i < lines; i++) {
+            int kind = random.nextInt(40);
+            if (kind == 0) {
+                line(out, random, header(random, path(random)));
+            } else if (kind == 1) {
+                line(out, random, "[FILE_END: " + path(random) + "]");
+            } else {
+                line(out, random, "x".repeat(random.nextInt(120)));
+            }
+        }
+    }
+
+    private static String header(Random random, String path) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return "[FILE_PATCH: " + path + "]";
+            case 1:
+                return "[FILE_SAME: " + path + "]";
+            default:
+                return "[FILE_START: " + path + "]";
+        }
+    }
+
+    private static String path(Random random) {
+        return "f" + random.nextInt(6);
+    }
+
+    private static void line(StringBuilder out, Random random, String text) {
+        out.append(text).append(TERMINATORS[random.nextInt(TERMINATORS.length)]);
+    }
+
+    private static void assertSameIndex(String message, LmpIndex expected, LmpIndex actual) {
+        assertEquals(message, describe(expected), describe(actual));
+    }
+
+    private static List<String> describe(LmpIndex index) {
+        List<String> lines = new ArrayList<>();
+        for (LmpIndex.Entry entry : index.getEntries()) {
+            lines.add(entry.getPath() + " " + entry.getHeaderStart() + " " + entry.getBodyStart() + " " + entry.getBodyEnd()
+                    + " " + entry.getBlockEnd() + " verbatim=" + entry.isBodyVerbatim() + " patch=" + entry.isPatch()
+                    + " reference=" + entry.isReference());
+        }
+        lines.add("unclosed=" + index.getUnclosedPath());
+        return lines;
+    }
+}
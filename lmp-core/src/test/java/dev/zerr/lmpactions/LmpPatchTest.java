@@ -0,0 +1,42 @@
+package dev.zerr.lmpactions;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LmpPatchTest {
+
+    @Test
+    public void replacedLinesKeepTheirTerminators() throws IOException {
+        String original = "one\r\ntwo\nthree\r\nfour\n";
+        String patched = LmpPatch.parse("@@ -2,2 +2,3 @@\n two\n-three\n+3\n+3.5\n").apply(original);
+
+        assertEquals("one\r\ntwo\n3\r\n3.5\r\nfour\n", patched);
+    }
+
+    @Test
+    public void insertedLinesTakeTheTerminatorOfTheLineBefore() throws IOException {
+        String original = "a\r\nb\r\nc\nd\n";
+        String patched = LmpPatch.parse("@@ -2,2 +2,3 @@\n b\n+inserted\n c\n").apply(original);
+
+        assertEquals("a\r\nb\r\ninserted\r\nc\nd\n", patched);
+    }
+
+    @Test
+    public void linesInsertedFirstTakeTheTerminatorOfTheLineAfter() throws IOException {
+        String original = "a\r\nb\n";
+        String patched = LmpPatch.parse("@@ -0,0 +1 @@\n+first\n").apply(original);
+
+        assertEquals("first\r\na\r\nb\n", patched);
+    }
+
+    @Test
+    public void diffRoundTripsMixedLineEndings() throws IOException {
+        String original = "x\r\ny\nz\r\n";
+        String changed = "x\r\ny\nzz\r\n";
+
+        assertEquals(changed, LmpPatch.parse(LmpPatch.diff(original, changed, LmpPatch.DEFAULT_CONTEXT)).apply(original));
+    }
+}
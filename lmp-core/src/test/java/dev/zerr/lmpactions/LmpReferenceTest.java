@@ -0,0 +1,93 @@
+package dev.zerr.lmpactions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LmpReferenceTest {
+
+    // Long enough to be deduplicated
+    private static final String SHARED = "shared line\n".repeat(40);
+    // A real file that reads like a reference
+    private static final String LOOKALIKE = "[FILE_SAME: a.txt]\n";
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("lmp-reference-test");
+        Path src = Files.createDirectories(dir.resolve("src"));
+        Files.writeString(src.resolve("a.txt"), SHARED);
+        Files.writeString(src.resolve("b.txt"), SHARED);
+        Files.writeString(src.resolve("c.txt"), LOOKALIKE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void duplicatesAreWrittenAsReferenceBlocks() throws IOException {
+        String lmp = pack();
+
+        assertTrue(lmp.contains("[FILE_SAME: b.txt]\na.txt\n[FILE_END: b.txt]\n"));
+        assertTrue(lmp.contains("[FILE_START: c.txt]\n" + LOOKALIKE + "[FILE_END: c.txt]\n"));
+    }
+
+    @Test
+    public void indexedExtractKeepsReferenceLookalikes() throws IOException {
+        new LmpExtractor().extract(pack(), dir.resolve("indexed"));
+        assertExtracted(dir.resolve("indexed"));
+    }
+
+    @Test
+    public void mappedExtractKeepsReferenceLookalikes() throws IOException {
+        Path lmpFile = Files.writeString(dir.resolve("pack.lmp"), pack());
+        new LmpExtractor().extract(lmpFile, dir.resolve("mapped"));
+        assertExtracted(dir.resolve("mapped"));
+    }
+
+    @Test
+    public void streamedExtractKeepsReferenceLookalikes() throws IOException {
+        new LmpExtractor().extract(new StringReader(pack()), dir.resolve("streamed"));
+        assertExtracted(dir.resolve("streamed"));
+    }
+
+    @Test
+    public void indexResolvesOnlyReferenceBlocks() throws IOException {
+        LmpIndex index = LmpIndex.parse(pack());
+
+        assertEquals(SHARED, index.getContent("b.txt").toString());
+        assertEquals(LOOKALIKE, index.getContent("c.txt").toString());
+        assertNull(index.getOriginal(index.getEntry("c.txt")));
+    }
+
+    private String pack() throws IOException {
+        StringWriter text = new StringWriter();
+        try (LmpWriter out = new LmpWriter(text)) {
+            new LmpPacker(new LmpPackOptions().setDeduplicate(true)).packFolder(dir.resolve("src"), dir.resolve("src"), out);
+        }
+        return text.toString();
+    }
+
+    private static void assertExtracted(Path extracted) throws IOException {
+        assertEquals(SHARED, Files.readString(extracted.resolve("a.txt")));
+        assertEquals(SHARED, Files.readString(extracted.resolve("b.txt")));
+        assertEquals(LOOKALIKE, Files.readString(extracted.resolve("c.txt")));
+    }
+}
@@ -0,0 +1,35 @@
+package dev.zerr.lmpactions;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LmpSnapshotTest {
+
+    @Test
+    public void copyIsUnaffectedByLaterUpdates() throws IOException {
+        LmpSnapshot snapshot = new LmpSnapshot();
+        snapshot.put("a.txt", "[FILE_START: a.txt]\na\n[FILE_END: a.txt]\n", -1, null);
+        LmpSnapshot copy = snapshot.copy();
+
+        LmpSnapshot rendered = new LmpSnapshot();
+        rendered.put("b.txt", "[FILE_START: b.txt]\nb\n[FILE_END: b.txt]\n", -1, null);
+        snapshot.update(List.of("a.txt", "b.txt"), rendered);
+
+        assertEquals(1, copy.getFileCount());
+        assertEquals("[FILE_START: a.txt]\na\n[FILE_END: a.txt]\n", write(copy));
+        assertEquals("[FILE_START: b.txt]\nb\n[FILE_END: b.txt]\n", write(snapshot));
+    }
+
+    private static String write(LmpSnapshot snapshot) throws IOException {
+        StringWriter text = new StringWriter();
+        try (LmpWriter out = new LmpWriter(text)) {
+            snapshot.writeTo(out, new LmpPackReport(), 0, LmpPackOptions.BudgetPolicy.STOP);
+        }
+        return text.toString();
+    }
+}
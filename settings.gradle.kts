@@ -1 +1,3 @@
 rootProject.name = "lmp-actions-intellij"
+
+include("lmp-core", "lmp-cli")
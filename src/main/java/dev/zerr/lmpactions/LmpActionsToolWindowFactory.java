@@ -1,50 +1,55 @@
 package dev.zerr.lmpactions;
 
-import com.intellij.diff.DiffContentFactory;
-import com.intellij.diff.DiffDialogHints;
-import com.intellij.diff.DiffManager;
-import com.intellij.diff.contents.DiffContent;
-import com.intellij.diff.requests.SimpleDiffRequest;
-import com.intellij.openapi.fileEditor.FileEditorManager;
-import com.intellij.openapi.fileTypes.FileType;
-import com.intellij.openapi.fileTypes.FileTypeRegistry;
-import com.intellij.openapi.fileTypes.UnknownFileType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.*;
-import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.ui.ColoredTreeCellRenderer;
 import com.intellij.ui.JBSplitter;
+import com.intellij.ui.SimpleTextAttributes;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.content.*;
 import com.intellij.ui.treeStructure.Tree;
 import com.intellij.util.ui.JBUI;
+import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 public class LmpActionsToolWindowFactory implements ToolWindowFactory, DumbAware {
     
-    private Map<String, String> currentFileContents = new HashMap<>();
+    // Files larger than this are loaded read-only, straight into the tree
+    private static final long LARGE_INPUT_THRESHOLD = 8L * 1024 * 1024;
+
+    private LmpIndex currentIndex = LmpIndex.parse("");
+    // The estimator the shown index was counted with; each parse reads the mode from the settings
+    private LmpTokenEstimator estimator = newEstimator();
+    private JLabel treeLabel;
+    // Set while the tree shows a file loaded past the editor
+    private Path loadedFile;
+    private LmpInputEditor lmpInput;
     private Project project;
+    private LmpDiffPreview diffPreview;
     
     @Override
     public void createToolWindowContent(Project project, ToolWindow toolWindow) {
         this.project = project;
+        this.diffPreview = new LmpDiffPreview(project);
         
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.setBorder(JBUI.Borders.empty(8));
@@ -55,17 +60,32 @@ public class LmpActionsToolWindowFactory implements ToolWindowFactory, DumbAware
         // Main content with vertical split
         JBSplitter mainSplitter = new JBSplitter(true, 0.7f);
         mainSplitter.setPreferredSize(new Dimension(800, 600));
-        mainSplitter.setFirstComponent(createInputPanel());
+        mainSplitter.setFirstComponent(createInputPanel(toolWindow.getDisposable()));
         mainSplitter.setSecondComponent(createBottomPanel());
 
         mainPanel.add(topPanel, BorderLayout.NORTH);
         mainPanel.add(mainSplitter, BorderLayout.CENTER);
+        mainPanel.add(createStatsLine(toolWindow.getDisposable()), BorderLayout.SOUTH);
 
         ContentFactory contentFactory = ContentFactory.getInstance();
         Content content = contentFactory.createContent(mainPanel, "", false);
         toolWindow.getContentManager().addContent(content);
     }
 
+    // Summary of the last copy or extract in this project; the tooltip has the phase timings
+    private JLabel createStatsLine(Disposable parentDisposable) {
+        JLabel statsLabel = new JLabel(" ");
+        statsLabel.setFont(JBUI.Fonts.smallFont());
+        statsLabel.setForeground(UIUtil.getContextHelpForeground());
+        statsLabel.setBorder(JBUI.Borders.emptyTop(4));
+        project.getMessageBus().connect(parentDisposable).subscribe(LmpStatsListener.TOPIC,
+                (LmpStatsListener) (title, stats) -> SwingUtilities.invokeLater(() -> {
+                    statsLabel.setText(title + ": " + stats.getSummary());
+                    statsLabel.setToolTipText(stats.toString());
+                }));
+        return statsLabel;
+    }
+
     private JPanel createTopPanel() {
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         topPanel.setBorder(JBUI.Borders.emptyBottom(8));
@@ -102,33 +122,57 @@ public class LmpActionsToolWindowFactory implements ToolWindowFactory, DumbAware
         return topPanel;
     }
 
-    private JPanel createInputPanel() {
+    private JPanel createInputPanel(Disposable parentDisposable) {
         JPanel inputPanel = new JPanel(new BorderLayout());
         inputPanel.setBorder(JBUI.Borders.emptyBottom(4));
         
         JLabel inputLabel = new JLabel("Paste LMP content:");
-        inputLabel.setBorder(JBUI.Borders.emptyBottom(4));
-        
-        JTextArea lmpInput = new JTextArea();
-        lmpInput.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
-        lmpInput.setLineWrap(true);
-        lmpInput.setWrapStyleWord(true);
-        lmpInput.setBorder(JBUI.Borders.empty(4));
+
+        lmpInput = new LmpInputEditor(project, parentDisposable);
+
+        JButton loadButton = new JButton("Load from File...");
+        JButton clearButton = new JButton("Clear");
+        JPanel inputHeader = new JPanel(new BorderLayout());
+        inputHeader.setBorder(JBUI.Borders.emptyBottom(4));
+        JPanel inputButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        inputButtons.add(loadButton);
+        inputButtons.add(clearButton);
+        inputHeader.add(inputLabel, BorderLayout.WEST);
+        inputHeader.add(inputButtons, BorderLayout.EAST);
 
         // Tree for file structure
-        DefaultMutableTreeNode rootNode = new DefaultMutableTreeNode("Files");
-        DefaultTreeModel treeModel = new DefaultTreeModel(rootNode);
+        LmpTreeModel treeModel = new LmpTreeModel("Files");
         Tree fileTree = new Tree(treeModel);
         fileTree.setRootVisible(true);
         fileTree.setShowsRootHandles(true);
+        fileTree.setCellRenderer(new ColoredTreeCellRenderer() {
+            @Override
+            public void customizeCellRenderer(@NotNull JTree tree, Object value, boolean selected, boolean expanded,
+                                              boolean leaf, int row, boolean hasFocus) {
+                LmpTreeModel.Node node = (LmpTreeModel.Node) value;
+                append(node.toString());
+                LmpIndex.Entry entry = node.isFile() ? currentIndex.getEntry(node.getPath()) : null;
+                if (entry != null && entry.isPatch()) {
+                    append("  patch", SimpleTextAttributes.GRAY_ITALIC_ATTRIBUTES);
+                }
+                LmpIndex.Entry original = entry != null ? currentIndex.getOriginal(entry) : null;
+                if (original != null) {
+                    append("  same as " + original.getPath(), SimpleTextAttributes.GRAY_ITALIC_ATTRIBUTES);
+                }
+                long tokens = node.isFile() ? currentIndex.getTokens(node.getPath(), estimator) : -1;
+                if (tokens >= 0) {
+                    append("  ~" + tokens + " tokens", SimpleTextAttributes.GRAYED_ATTRIBUTES);
+                }
+            }
+        });
         
         // Add click listener for file tree
         fileTree.addTreeSelectionListener(e -> {
             TreePath path = e.getPath();
-            if (path != null) {
-                String filePath = getFilePathFromTreePath(path);
-                if (filePath != null && currentFileContents.containsKey(filePath)) {
-                    handleFileClick(filePath);
+            if (path != null && e.isAddedPath()) {
+                LmpTreeModel.Node node = (LmpTreeModel.Node) path.getLastPathComponent();
+                if (node.isFile() && currentIndex.contains(node.getPath())) {
+                    handleFileClick(node.getPath());
                 }
             }
         });
@@ -137,35 +181,42 @@ public class LmpActionsToolWindowFactory implements ToolWindowFactory, DumbAware
         JBSplitter inputSplitter = new JBSplitter(true, 0.7f);
         
         JPanel textAreaPanel = new JPanel(new BorderLayout());
-        textAreaPanel.add(new JBScrollPane(lmpInput), BorderLayout.CENTER);
+        textAreaPanel.add(lmpInput.getComponent(), BorderLayout.CENTER);
         inputSplitter.setFirstComponent(textAreaPanel);
         
         JPanel treePanel = new JPanel(new BorderLayout());
-        JLabel treeLabel = new JLabel("File Structure:");
-        treeLabel.setBorder(JBUI.Borders.emptyBottom(4));
-        treePanel.add(treeLabel, BorderLayout.NORTH);
+        treeLabel = new JLabel("File Structure:");
+        JButton reviewAllButton = new JButton("Review All");
+        reviewAllButton.setToolTipText("Show the diffs of every new or changed file in one window");
+        reviewAllButton.addActionListener(e -> {
+            if (currentIndex.size() > 0) {
+                diffPreview.reviewAll(currentIndex);
+            }
+        });
+        JPanel treeHeader = new JPanel(new BorderLayout());
+        treeHeader.setBorder(JBUI.Borders.emptyBottom(4));
+        treeHeader.add(treeLabel, BorderLayout.WEST);
+        treeHeader.add(reviewAllButton, BorderLayout.EAST);
+        treePanel.add(treeHeader, BorderLayout.NORTH);
         treePanel.add(new JBScrollPane(fileTree), BorderLayout.CENTER);
         inputSplitter.setSecondComponent(treePanel);
 
-        // Document listener for real-time tree update
-        lmpInput.getDocument().addDocumentListener(new DocumentListener() {
-            @Override
-            public void insertUpdate(DocumentEvent e) {
-                updateFileTree(lmpInput.getText(), treeModel, rootNode);
-            }
-
-            @Override
-            public void removeUpdate(DocumentEvent e) {
-                updateFileTree(lmpInput.getText(), treeModel, rootNode);
-            }
+        // Debounced background parsing for real-time tree update; ignored while a loaded file is shown
+        new LmpInputParser(lmpInput.getDocument(), parentDisposable, LmpActionsToolWindowFactory::newEstimator,
+                (index, counted) -> {
+                    if (loadedFile == null) {
+                        lmpInput.decorate(index);
+                        updateFileTree(index, counted, treeModel);
+                    }
+                });
 
-            @Override
-            public void changedUpdate(DocumentEvent e) {
-                updateFileTree(lmpInput.getText(), treeModel, rootNode);
-            }
+        loadButton.addActionListener(e -> loadFromFile(lmpInput, treeModel));
+        clearButton.addActionListener(e -> {
+            loadedFile = null;
+            lmpInput.setText("");
         });
 
-        inputPanel.add(inputLabel, BorderLayout.NORTH);
+        inputPanel.add(inputHeader, BorderLayout.NORTH);
         inputPanel.add(inputSplitter, BorderLayout.CENTER);
         
         return inputPanel;
@@ -199,10 +250,7 @@ public class LmpActionsToolWindowFactory implements ToolWindowFactory, DumbAware
         JLabel statusLabel = new JLabel(" ");
         statusLabel.setBorder(JBUI.Borders.emptyLeft(8));
         
-        extractButton.addActionListener(e -> {
-            // Extract button logic would go here
-            statusLabel.setText("Extraction functionality to be implemented");
-        });
+        extractButton.addActionListener(e -> extract(outputDir.getText().trim(), statusLabel));
         
         buttonPanel.add(extractButton);
         buttonPanel.add(statusLabel);
@@ -213,126 +261,98 @@ public class LmpActionsToolWindowFactory implements ToolWindowFactory, DumbAware
         return bottomPanel;
     }
 
-    private void updateFileTree(String lmpContent, DefaultTreeModel treeModel, DefaultMutableTreeNode rootNode) {
-        SwingUtilities.invokeLater(() -> {
-            rootNode.removeAllChildren();
-            currentFileContents.clear();
-            
-            if (lmpContent == null || lmpContent.trim().isEmpty()) {
-                treeModel.nodeStructureChanged(rootNode);
-                return;
-            }
+    // Extracts what the tool window shows: a loaded file straight from disk, mapped, or else the editor's text
+    private void extract(String outputDir, JLabel statusLabel) {
+        Path destDir;
+        try {
+            destDir = outputDir.isEmpty() ? null : Path.of(outputDir);
+        } catch (InvalidPathException ex) {
+            destDir = null;
+        }
+        if (destDir == null || !destDir.isAbsolute()) {
+            statusLabel.setText("Enter an absolute output directory.");
+            return;
+        }
+        Path lmpFile = loadedFile;
+        CharSequence text = lmpInput.getDocument().getImmutableCharSequence();
+        if (lmpFile == null && text.toString().isBlank()) {
+            statusLabel.setText("Paste or load LMP content first.");
+            return;
+        }
+        statusLabel.setText(" ");
+        Path target = destDir;
+        LmpExtractAction.extractInBackground(project, target, (extractor, progress) -> lmpFile != null
+                ? extractor.extract(lmpFile, target, progress)
+                : extractor.extract(text, target, progress));
+    }
 
-            try {
-                LmpOperator operator = new LmpOperator();
-                List<String> files = operator.parseFileList(lmpContent);
-                currentFileContents = operator.parseFileContents(lmpContent);
-                
-                // Create hierarchical structure
-                Map<String, DefaultMutableTreeNode> nodeMap = new HashMap<>();
-                nodeMap.put("", rootNode);
-                
-                for (String filePath : files) {
-                    String[] parts = filePath.split("/");
-                    StringBuilder currentPath = new StringBuilder();
-                    DefaultMutableTreeNode currentNode = rootNode;
-                    
-                    for (int i = 0; i < parts.length; i++) {
-                        String part = parts[i];
-                        if (i > 0) {
-                            currentPath.append("/");
-                        }
-                        currentPath.append(part);
-                        String pathKey = currentPath.toString();
-                        
-                        if (!nodeMap.containsKey(pathKey)) {
-                            DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(part);
-                            currentNode.add(newNode);
-                            nodeMap.put(pathKey, newNode);
-                            currentNode = newNode;
-                        } else {
-                            currentNode = nodeMap.get(pathKey);
-                        }
-                    }
-                }
-                
-                treeModel.nodeStructureChanged(rootNode);
-                
-            } catch (Exception e) {
-                treeModel.nodeStructureChanged(rootNode);
-            }
-        });
+    // Runs on the EDT with a fresh index; the model only re-lists directories the tree has already expanded
+    private void updateFileTree(LmpIndex index, LmpTokenEstimator counted, LmpTreeModel treeModel) {
+        currentIndex = index;
+        estimator = counted;
+        treeModel.setPaths(index.getPaths());
+        treeLabel.setText(index.size() == 0
+                ? "File Structure:"
+                : "File Structure: " + index.size() + (index.size() == 1 ? " file" : " files")
+                        + ", ~" + index.getTotalTokens(estimator) + " tokens");
     }
 
-    private String getFilePathFromTreePath(TreePath treePath) {
-        if (treePath.getPathCount() <= 1) {
-            return null; // Root node
+    private void loadFromFile(LmpInputEditor lmpInput, LmpTreeModel treeModel) {
+        VirtualFile file = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFileDescriptor(), project, null);
+        if (file == null) {
+            return;
         }
-        
-        StringBuilder filePath = new StringBuilder();
-        for (int i = 1; i < treePath.getPathCount(); i++) {
-            if (i > 1) {
-                filePath.append("/");
+        if (file.getLength() <= LARGE_INPUT_THRESHOLD) {
+            try {
+                loadedFile = null;
+                lmpInput.setText(StringUtil.convertLineSeparators(VfsUtilCore.loadText(file)));
+            } catch (IOException ex) {
+                Messages.showErrorDialog(project, "Failed to read " + file.getPresentableUrl() + ": " + ex.getMessage(), "LMP Load Error");
             }
-            filePath.append(treePath.getPathComponent(i).toString());
+            return;
         }
-        
-        String path = filePath.toString();
-        return currentFileContents.containsKey(path) ? path : null;
-    }
 
-    private void handleFileClick(String filePath) {
-        String lmpContent = currentFileContents.get(filePath);
-        if (lmpContent == null) return;
-        
-        // Check if file exists in project
-        Path projectPath = Paths.get(project.getBasePath());
-        Path fullFilePath = projectPath.resolve(filePath);
-        
-        if (Files.exists(fullFilePath)) {
-            // File exists - show diff
-            showDiffWithExistingFile(filePath, lmpContent, fullFilePath);
-        } else {
-            // File doesn't exist - show preview
-            showFilePreview(filePath, lmpContent);
-        }
-    }
+        // Too large to edit comfortably: parsed in the background and only shown in the tree, never put in the editor
+        new Task.Backgroundable(project, "Loading " + file.getName(), true) {
+            private LmpIndex index;
+            private LmpTokenEstimator counted;
 
-    private void showDiffWithExistingFile(String filePath, String lmpContent, Path existingFilePath) {
-        try {
-            String existingContent = Files.readString(existingFilePath);
-            
-            DiffContentFactory contentFactory = DiffContentFactory.getInstance();
-            DiffContent existingDiffContent = contentFactory.create(existingContent);
-            DiffContent lmpDiffContent = contentFactory.create(lmpContent);
-            
-            SimpleDiffRequest diffRequest = new SimpleDiffRequest(
-                "Compare: " + filePath,
-                existingDiffContent,
-                lmpDiffContent,
-                "Existing File",
-                "LMP Content"
-            );
-            
-            DiffManager.getInstance().showDiff(project, diffRequest, DiffDialogHints.DEFAULT);
-            
-        } catch (IOException e) {
-            showFilePreview(filePath, lmpContent);
-        }
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    index = LmpIndex.parse(new String(file.contentsToByteArray(false), file.getCharset()),
+                            Runtime.getRuntime().availableProcessors());
+                    counted = newEstimator();
+                    index.getTotalTokens(counted);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                loadedFile = file.toNioPath();
+                lmpInput.showNote("Loaded " + file.getPresentableUrl() + " ("
+                        + StringUtil.formatFileSize(file.getLength()) + "), read-only.\n"
+                        + "Select files in the tree to preview them, or press Clear to paste new content.\n");
+                updateFileTree(index, counted, treeModel);
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                Throwable cause = error instanceof UncheckedIOException ? error.getCause() : error;
+                Messages.showErrorDialog(project, "Failed to read " + file.getPresentableUrl() + ": " + cause.getMessage(), "LMP Load Error");
+            }
+        }.queue();
     }
 
-    private void showFilePreview(String filePath, String content) {
-        // Create a virtual file for preview
-        String fileName = Paths.get(filePath).getFileName().toString();
-        LightVirtualFile virtualFile = new LightVirtualFile(fileName, content);
+    private static LmpTokenEstimator newEstimator() {
+        return new LmpTokenEstimator(LmpSettings.getInstance().getState().tokenEstimator);
+    }
 
-        // Let IntelliJ automatically detect the file type
-        FileType detectedFileType = FileTypeRegistry.getInstance().getFileTypeByFileName(fileName);
-        if (detectedFileType != UnknownFileType.INSTANCE) {
-            virtualFile.setFileType(detectedFileType);
+    private void handleFileClick(String filePath) {
+        if (currentIndex.contains(filePath)) {
+            diffPreview.show(currentIndex, filePath);
         }
-
-        // Open in editor
-        FileEditorManager.getInstance(project).openFile(virtualFile, true);
     }
 }
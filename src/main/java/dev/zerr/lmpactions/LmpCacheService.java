@@ -0,0 +1,29 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+
+// Per-project caches that outlive a single copy, so repeated copies of the same files are cheap
+@Service(Service.Level.PROJECT)
+public final class LmpCacheService {
+
+    private final LmpTokenCache tokenCache = new LmpTokenCache();
+    private final LmpChunkCache chunkCache = new LmpChunkCache();
+    private final LmpContentHashes contentHashes = new LmpContentHashes();
+
+    public static LmpCacheService getInstance(Project project) {
+        return project.getService(LmpCacheService.class);
+    }
+
+    public LmpTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public LmpChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    public LmpContentHashes getContentHashes() {
+        return contentHashes;
+    }
+}
@@ -1,25 +1,17 @@
 package dev.zerr.lmpactions;
 
 import com.intellij.openapi.actionSystem.*;
-import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
-import java.awt.datatransfer.StringSelection;
-import java.nio.file.Path;
-import java.util.Arrays;
+import java.io.StringWriter;
 import java.util.List;
-import java.util.regex.Pattern;
 
 public class LmpCopyAction extends AnAction {
 
-    private static final List<String> DEFAULT_EXCLUDE_EXTENSIONS = Arrays.asList(
-            ".exe", ".dll", ".so", ".bin", ".class", ".jar", ".png", ".jpg", ".jpeg", ".gif", ".svg", ".ico", ".mp3", ".mp4", ".wav", ".zip", ".tar", ".gz", ".7z", ".rar", ".iso"
-    );
-    private static final List<Pattern> DEFAULT_EXCLUDE_PATTERNS = Arrays.asList(
-            Pattern.compile("^node_modules/"), Pattern.compile("^\\.git/"), Pattern.compile("^\\.idea/"), Pattern.compile("^\\.vscode/"), Pattern.compile("^__pycache__/")
-    );
+    private static final Logger LOG = Logger.getInstance(LmpCopyAction.class);
 
     @Override
     public void actionPerformed(@NotNull AnActionEvent e) {
@@ -31,23 +23,30 @@ public class LmpCopyAction extends AnAction {
             return;
         }
 
-        LmpOperator operator = new LmpOperator();
-        StringBuilder lmpContent = new StringBuilder();
-        Path projectRoot = Path.of(project.getBasePath());
+        StringWriter lmpContent = new StringWriter();
+        LmpPacker packer = LmpCopySupport.createPacker(project);
 
         try {
-            for (VirtualFile vf : files) {
-                Path path = Path.of(vf.getPath());
-                if (vf.isDirectory()) {
-                    lmpContent.append(operator.copyFolderAsLmp(path, DEFAULT_EXCLUDE_EXTENSIONS, DEFAULT_EXCLUDE_PATTERNS, projectRoot));
-                } else if (vf.isValid() && !vf.isDirectory()) {
-                    lmpContent.append(operator.copyFileAsLmp(path, projectRoot));
-                }
+            List<List<LmpSourceFile>> selection = LmpCopySupport.listSelection(packer, files, project);
+            if (LmpCopySupport.isLarge(selection)) {
+                LmpCopySupport.setLazyClipboard(project, "Copy as LMP", packer, selection, "", "");
+                return;
+            }
+            try (LmpWriter out = new LmpWriter(lmpContent)) {
+                LmpCopySupport.pack(packer, selection, out);
+            }
+            LmpCopySupport.setClipboard(packer, lmpContent);
+            LmpPackReport report = packer.getReport();
+            if (report.isBudgetExceeded()) {
+                LmpNotifications.warning(project, "Copy as LMP", LmpNotifications.describe(report));
+            } else {
+                LmpNotifications.info(project, "Copy as LMP", LmpNotifications.describe(report));
             }
-            CopyPasteManager.getInstance().setContents(new StringSelection(lmpContent.toString()));
-            // Notification or popup can be added here
         } catch (Exception ex) {
-            // Error handling (could use Notifications)
+            LOG.warn("Copy as LMP failed", ex);
+            LmpNotifications.error(project, "Copy as LMP", "Error copying files: " + ex.getMessage());
+        } finally {
+            LmpStatsListener.publish(project, "Copy as LMP", packer.getStats());
         }
     }
 }
@@ -0,0 +1,184 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ChangeListManager;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.datatransfer.StringSelection;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Copies only the local changes under the selection: modified files as FILE_PATCH hunks with context, new and moved
+// files in full. Deletions, the old paths of moved files and line ending changes have no LMP form and are listed in
+// the notification
+public class LmpCopyChangesAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(LmpCopyChangesAction.class);
+    private static final String TITLE = "Copy Changes as LMP";
+    private static final int MAX_LISTED_FILES = 10;
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        e.getPresentation().setEnabledAndVisible(project != null && ProjectLevelVcsManager.getInstance(project).hasActiveVcss());
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        VirtualFile[] files = e.getData(CommonDataKeys.VIRTUAL_FILE_ARRAY);
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        List<VirtualFile> roots = LmpCopySupport.normalize(files);
+        List<Change> changes = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        // "old → new" for moved and renamed files, copied in full at the new path only
+        List<String> moved = new ArrayList<>();
+        Path projectRoot = Path.of(project.getBasePath());
+        for (Change change : ChangeListManager.getInstance(project).getAllChanges()) {
+            ContentRevision revision = change.getAfterRevision() != null ? change.getAfterRevision() : change.getBeforeRevision();
+            if (revision == null || !isUnder(revision.getFile(), roots)) {
+                continue;
+            }
+            if (change.getAfterRevision() == null) {
+                deleted.add(relPath(projectRoot, revision.getFile()));
+            } else {
+                changes.add(change);
+                if (change.getBeforeRevision() != null && (change.isMoved() || change.isRenamed())) {
+                    moved.add(relPath(projectRoot, change.getBeforeRevision().getFile()) + " → "
+                            + relPath(projectRoot, change.getAfterRevision().getFile()));
+                }
+            }
+        }
+        if (changes.isEmpty()) {
+            LmpNotifications.info(project, TITLE, "No local changes in the selection.");
+            return;
+        }
+
+        // Revision contents may come from the VCS, so they are read off the EDT
+        new Task.Backgroundable(project, "Copying changes as LMP", true) {
+            private final StringWriter lmpContent = new StringWriter();
+            private final List<String> skipped = new ArrayList<>();
+            // Modified files whose only change is their line endings, which hunks cannot express
+            private final List<String> lineEndingsOnly = new ArrayList<>();
+            private int patched;
+            private int full;
+            private Exception failure;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(false);
+                try (LmpWriter out = new LmpWriter(lmpContent)) {
+                    for (int i = 0; i < changes.size(); i++) {
+                        indicator.checkCanceled();
+                        indicator.setFraction((double) i / changes.size());
+                        write(changes.get(i), out);
+                    }
+                } catch (IOException | VcsException ex) {
+                    failure = ex;
+                }
+            }
+
+            private void write(Change change, LmpWriter out) throws IOException, VcsException {
+                ContentRevision after = change.getAfterRevision();
+                String relPath = relPath(projectRoot, after.getFile());
+                String newText = after.getContent();
+                if (newText == null) {
+                    // Binary, or gone since the change was recorded
+                    skipped.add(relPath);
+                    return;
+                }
+                ContentRevision before = change.getBeforeRevision();
+                String oldText = before != null && !change.isMoved() && !change.isRenamed() ? before.getContent() : null;
+                if (oldText == null) {
+                    out.writeFile(relPath, newText);
+                    full++;
+                    return;
+                }
+                String hunks = LmpPatch.diff(StringUtil.convertLineSeparators(oldText), StringUtil.convertLineSeparators(newText),
+                        LmpPatch.DEFAULT_CONTEXT);
+                if (!hunks.isEmpty()) {
+                    out.writePatch(relPath, hunks);
+                    patched++;
+                } else if (!oldText.equals(newText)) {
+                    lineEndingsOnly.add(relPath);
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (failure != null) {
+                    LOG.warn("Copy changes as LMP failed", failure);
+                    LmpNotifications.error(project, TITLE, "Error copying changes: " + failure.getMessage());
+                    return;
+                }
+                CopyPasteManager.getInstance().setContents(new StringSelection(lmpContent.toString()));
+                long tokens = new LmpTokenEstimator(LmpSettings.getInstance().getState().tokenEstimator).estimate(lmpContent.getBuffer());
+                StringBuilder text = new StringBuilder("Copied ")
+                        .append(patched).append(patched == 1 ? " patch" : " patches").append(" and ")
+                        .append(full).append(full == 1 ? " full file" : " full files")
+                        .append(", ~").append(tokens).append(" tokens.");
+                appendPaths(text, "Skipped binary files", skipped);
+                appendPaths(text, "Not included, deleted", deleted);
+                appendPaths(text, "Not included, only line endings changed", lineEndingsOnly);
+                appendPaths(text, "Moved or renamed, copied at the new path only (the old path is not removed)", moved);
+                if (skipped.isEmpty() && deleted.isEmpty() && lineEndingsOnly.isEmpty() && moved.isEmpty()) {
+                    LmpNotifications.info(project, TITLE, text.toString());
+                } else {
+                    LmpNotifications.warning(project, TITLE, text.toString());
+                }
+            }
+        }.queue();
+    }
+
+    private static boolean isUnder(FilePath file, List<VirtualFile> roots) {
+        for (VirtualFile root : roots) {
+            if (FileUtil.isAncestor(root.getPath(), file.getPath(), false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String relPath(Path projectRoot, FilePath file) {
+        return LmpPacker.toLmpPath(projectRoot, Path.of(file.getPath()));
+    }
+
+    private static void appendPaths(StringBuilder text, String label, List<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        text.append("<br>").append(label).append(':');
+        for (int i = 0; i < Math.min(paths.size(), MAX_LISTED_FILES); i++) {
+            text.append("<br>").append(StringUtil.escapeXmlEntities(paths.get(i)));
+        }
+        if (paths.size() > MAX_LISTED_FILES) {
+            text.append("<br>and ").append(paths.size() - MAX_LISTED_FILES).append(" more");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.datatransfer.StringSelection;
+import java.io.IOException;
+import java.io.StringWriter;
+
+// Copies the whole project from the snapshot kept by LmpSnapshotService: no walk and no file reads, only the files
+// changed since the last event are rendered. Large snapshots are written out when pasted, as they were when copied
+public class LmpCopyProjectAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(LmpCopyProjectAction.class);
+    private static final String TITLE = "Copy Project as LMP";
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null
+                && LmpSettings.getInstance().getState().projectSnapshot);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        LmpSnapshotService service = LmpSnapshotService.getInstance(project);
+        if (!service.isReady()) {
+            service.start();
+            LmpNotifications.info(project, TITLE, "The project snapshot is still being built. Try again in a moment.");
+            return;
+        }
+
+        new Task.Backgroundable(project, "Copying project as LMP", true) {
+            private LmpSnapshot snapshot;
+            private String lmpContent;
+            private LmpPackReport report;
+            private Exception failure;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    service.sync(indicator);
+                    if (!service.isReady()) {
+                        // The update failed and a rebuild is queued
+                        throw new IOException("The project snapshot is being rebuilt. Try again in a moment.");
+                    }
+                    // Later events update the service's snapshot in place
+                    snapshot = service.getSnapshot().copy();
+                    if (LmpCopySupport.isLarge(snapshot.getChars())) {
+                        return;
+                    }
+                    StringWriter text = new StringWriter();
+                    try (LmpWriter out = new LmpWriter(text)) {
+                        report = write(snapshot, out);
+                    }
+                    lmpContent = text.toString();
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (failure != null) {
+                    LOG.warn("Copy project as LMP failed", failure);
+                    LmpNotifications.error(project, TITLE, "Error copying the project: " + failure.getMessage());
+                    return;
+                }
+                if (lmpContent == null) {
+                    // Written from the snapshot just synced, so the paste holds the files counted here
+                    LmpSnapshot synced = snapshot;
+                    LmpCopySupport.setLazyClipboard(new LmpTransferable(project, TITLE, out -> write(synced, out)));
+                    int fileCount = synced.getFileCount();
+                    LmpNotifications.info(project, TITLE, "Selected " + fileCount + (fileCount == 1 ? " file" : " files")
+                            + " (" + StringUtil.formatFileSize(synced.getChars()) + "). The LMP text is written out when pasted, "
+                            + "with the files as they were when copied.");
+                    return;
+                }
+                CopyPasteManager.getInstance().setContents(new StringSelection(lmpContent));
+                if (report.isBudgetExceeded()) {
+                    LmpNotifications.warning(project, TITLE, LmpNotifications.describe(report));
+                } else {
+                    LmpNotifications.info(project, TITLE, LmpNotifications.describe(report));
+                }
+            }
+        }.queue();
+    }
+
+    private static LmpPackReport write(LmpSnapshot snapshot, LmpWriter out) throws IOException {
+        LmpSettings.Settings settings = LmpSettings.getInstance().getState();
+        LmpPackReport report = new LmpPackReport();
+        snapshot.writeTo(out, report, settings.tokenBudget, settings.budgetPolicy);
+        return report;
+    }
+}
@@ -0,0 +1,123 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.*;
+
+// Packer setup and selection walk shared by the copy actions
+final class LmpCopySupport {
+
+    // Selections with more content than this are rendered when pasted, not when copied
+    private static final long LAZY_COPY_THRESHOLD = 32L * 1024 * 1024;
+
+    private LmpCopySupport() {
+    }
+
+    static LmpPacker createPacker(Project project) {
+        LmpSettings.Settings settings = LmpSettings.getInstance().getState();
+        LmpCacheService caches = LmpCacheService.getInstance(project);
+        return new LmpPacker(new LmpPackOptions()
+                .setExclusions(LmpExclusions.defaults(Path.of(project.getBasePath())))
+                .setParallelism(Runtime.getRuntime().availableProcessors())
+                .setMaxFileSize(settings.maxFileSize)
+                .setTokenEstimator(new LmpTokenEstimator(settings.tokenEstimator))
+                .setTokenCache(caches.getTokenCache())
+                .setChunkCache(caches.getChunkCache())
+                .setTokenBudget(settings.tokenBudget, settings.budgetPolicy)
+                .setDeduplicate(true));
+    }
+
+    // Each selected file or directory is listed from the VFS in a read action, and packed as its own sorted group
+    static List<List<LmpSourceFile>> listSelection(LmpPacker packer, VirtualFile[] files, Project project) {
+        Path projectRoot = Path.of(project.getBasePath());
+        LmpExclusions exclusions = packer.getOptions().getExclusions();
+        List<List<LmpSourceFile>> selection = new ArrayList<>();
+        try (LmpStats.Span ignored = packer.getStats().span(LmpStats.Phase.WALK)) {
+            for (VirtualFile vf : normalize(files)) {
+                // Open documents are snapshotted now; other contents come from the VFS cache when packed
+                selection.add(ReadAction.compute(() -> vf.isDirectory()
+                        ? LmpVfsSource.listFiles(vf, projectRoot, exclusions)
+                        : List.of(LmpVfsSource.of(vf, projectRoot))));
+            }
+        }
+        return selection;
+    }
+
+    // Valid local files without a selected ancestor, in selection order: a folder selected along with files or
+    // folders inside it is walked once
+    static List<VirtualFile> normalize(VirtualFile[] files) {
+        Set<VirtualFile> selected = new HashSet<>(Arrays.asList(files));
+        Set<VirtualFile> roots = new LinkedHashSet<>();
+        for (VirtualFile vf : files) {
+            if (!vf.isValid() || !vf.isInLocalFileSystem()) {
+                continue;
+            }
+            boolean nested = false;
+            for (VirtualFile parent = vf.getParent(); parent != null && !nested; parent = parent.getParent()) {
+                nested = selected.contains(parent);
+            }
+            if (!nested) {
+                roots.add(vf);
+            }
+        }
+        return new ArrayList<>(roots);
+    }
+
+    static void pack(LmpPacker packer, List<List<LmpSourceFile>> selection, LmpWriter out) throws IOException {
+        for (List<LmpSourceFile> sources : selection) {
+            packer.pack(sources, out);
+        }
+    }
+
+    static boolean isLarge(List<List<LmpSourceFile>> selection) {
+        return isLarge(totalSize(selection));
+    }
+
+    static boolean isLarge(long size) {
+        return size > LAZY_COPY_THRESHOLD;
+    }
+
+    static long totalSize(List<List<LmpSourceFile>> selection) {
+        long size = 0;
+        for (List<LmpSourceFile> sources : selection) {
+            for (LmpSourceFile source : sources) {
+                size += source.getSize();
+            }
+        }
+        return size;
+    }
+
+    static void setClipboard(LmpPacker packer, StringWriter lmpContent) {
+        LmpStats stats = packer.getStats();
+        stats.bufferUsed(lmpContent.getBuffer().length());
+        try (LmpStats.Span ignored = stats.span(LmpStats.Phase.CLIPBOARD)) {
+            CopyPasteManager.getInstance().setContents(new StringSelection(lmpContent.toString()));
+        }
+    }
+
+    // Puts a transferable that renders the selection when pasted
+    static void setLazyClipboard(Project project, String title, LmpPacker packer, List<List<LmpSourceFile>> selection,
+                                 String header, String footer) {
+        try (LmpStats.Span ignored = packer.getStats().span(LmpStats.Phase.CLIPBOARD)) {
+            setLazyClipboard(LmpTransferable.ofSelection(project, title, selection, header, footer));
+        }
+        int fileCount = selection.stream().mapToInt(List::size).sum();
+        LmpNotifications.info(project, title, "Selected " + fileCount + (fileCount == 1 ? " file" : " files") + " ("
+                + StringUtil.formatFileSize(totalSize(selection))
+                + "). The LMP text is rendered when pasted, from the files as they are then.");
+    }
+
+    // Straight to the system clipboard: the IDE's clipboard history would render it at once to keep a copy of the text
+    static void setLazyClipboard(LmpTransferable transferable) {
+        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(transferable, null);
+    }
+}
@@ -1,7 +1,7 @@
 package dev.zerr.lmpactions;
 
 import com.intellij.openapi.actionSystem.*;
-import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.openapi.ui.Messages;
@@ -11,20 +11,51 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.datatransfer.StringSelection;
-import java.nio.file.Path;
-import java.util.Arrays;
+import java.io.StringWriter;
 import java.util.List;
-import java.util.regex.Pattern;
 
 public class LmpCopyWithInstructionAction extends AnAction {
 
-    private static final List<String> DEFAULT_EXCLUDE_EXTENSIONS = Arrays.asList(
-            ".exe", ".dll", ".so", ".bin", ".class", ".jar", ".png", ".jpg", ".jpeg", ".gif", ".svg", ".ico", ".mp3", ".mp4", ".wav", ".zip", ".tar", ".gz", ".7z", ".rar", ".iso"
-    );
-    private static final List<Pattern> DEFAULT_EXCLUDE_PATTERNS = Arrays.asList(
-            Pattern.compile("^node_modules/"), Pattern.compile("^\\.git/"), Pattern.compile("^\\.idea/"), Pattern.compile("^\\.vscode/"), Pattern.compile("^__pycache__/")
-    );
+    private static final Logger LOG = Logger.getInstance(LmpCopyWithInstructionAction.class);
+
+    private static final String BASE_INSTRUCTIONS = """
+            Follow these instructions **exactly and without deviation**:
+            * Wrap the entire output in a **single fenced code block** using triple backticks (e.g., \\`\\`\\`txt). This outer block must contain the complete contents of the LMP file.
+            * Inside the LMP file:
+              - Do **not** include any fenced code blocks (e.g., \\`\\`\\`), markdown, or any kind of code formatting.
+              - Output must be **raw plain text only**.
+              - Use this format for each file:
+                [FILE_START: path/to/file.ext] \s
+                ...file contents... \s
+                [FILE_END: path/to/file.ext]
+            * The LMP file must contain **modified files** only.
+            * Always return the **complete modified file(s)** — do not include placeholders like "rest of file" or "..." and do not omit unchanged parts.
+            * Preserve the **exact directory and file structure**.
+            * Do **not** do unrequested modifications.
+            * For all documentation files (e.g., README, guides, manuals), use the **AsciiDoc (.adoc)** format. \s
+              - Do **not** use Markdown under any circumstances.
+              - Apply AsciiDoc syntax consistently throughout all documentation files.
+            * DO NO EXPLAIN NOTHING, JUST SEND THE PROJECT, PLEASE!!!
+            """;
+
+    private static final String FULL_FILES_RULE = """
+            * Always return the **complete modified file(s)** — do not include placeholders like "rest of file" or "..." and do not omit unchanged parts.
+            """;
+
+    // Replaces FULL_FILES_RULE when patches are allowed: small edits to large files cost a few lines instead of the whole file
+    private static final String PATCH_RULE = """
+            * For each modified file, return either:
+              - the **complete modified file** — do not include placeholders like "rest of file" or "..." and do not omit unchanged parts, or
+              - for small changes to a large file, **only the changes** as unified diff hunks:
+                [FILE_PATCH: path/to/file.ext] \s
+                @@ -12,7 +12,8 @@
+                 unchanged line
+                -removed line
+                +added line
+                [FILE_END: path/to/file.ext]
+              - Hunk lines start with a space (unchanged), "-" (removed) or "+" (added). Keep 3 unchanged lines around each change, copied exactly from the file.
+              - New files are always complete.
+            """;
 
     @Override
     public void actionPerformed(@NotNull AnActionEvent e) {
@@ -48,64 +79,47 @@ public class LmpCopyWithInstructionAction extends AnAction {
             return;
         }
 
-        LmpOperator operator = new LmpOperator();
-        StringBuilder lmpContent = new StringBuilder();
-        Path projectRoot = Path.of(project.getBasePath());
+        StringWriter lmpContent = new StringWriter();
+        LmpPacker packer = LmpCopySupport.createPacker(project);
 
         try {
-            for (VirtualFile vf : files) {
-                Path path = Path.of(vf.getPath());
-                if (vf.isDirectory()) {
-                    lmpContent.append(operator.copyFolderAsLmp(path, DEFAULT_EXCLUDE_EXTENSIONS, DEFAULT_EXCLUDE_PATTERNS, projectRoot));
-                } else if (vf.isValid() && !vf.isDirectory()) {
-                    lmpContent.append(operator.copyFileAsLmp(path, projectRoot));
-                }
+            List<List<LmpSourceFile>> selection = LmpCopySupport.listSelection(packer, files, project);
+            if (LmpCopySupport.isLarge(selection)) {
+                LmpCopySupport.setLazyClipboard(project, "LMP Copy with Instruction", packer, selection,
+                        formatInstructionsHeader(), formatInstructionsFooter(instruction));
+                return;
+            }
+            try (LmpWriter out = new LmpWriter(lmpContent)) {
+                out.write(formatInstructionsHeader());
+                LmpCopySupport.pack(packer, selection, out);
+                // Add instruction at the end
+                out.write(formatInstructionsFooter(instruction));
+            }
+            LmpCopySupport.setClipboard(packer, lmpContent);
+            LmpPackReport report = packer.getReport();
+            if (report.getSkippedFiles().isEmpty() && !report.isBudgetExceeded()) {
+                Messages.showInfoMessage(project, "LMP content with instructions copied to clipboard."
+                        + (report.hasTokenCounts() ? " (~" + report.getTotalTokens() + " tokens)" : ""), "LMP Copy with Instruction");
+            } else {
+                LmpNotifications.warning(project, "LMP Copy with Instruction", LmpNotifications.describe(report));
             }
-
-            // Add instruction at the end
-            String finalContent = formatLmpWithInstructions(lmpContent.toString(), instruction);
-            
-            CopyPasteManager.getInstance().setContents(new StringSelection(finalContent));
-            Messages.showInfoMessage(project, "LMP content with instructions copied to clipboard.", "LMP Copy with Instruction");
         } catch (Exception ex) {
+            LOG.warn("Copy as LMP with instruction failed", ex);
             Messages.showErrorDialog(project, "Error copying files: " + ex.getMessage(), "LMP Copy with Instruction");
+        } finally {
+            LmpStatsListener.publish(project, "Copy as LMP with instruction", packer.getStats());
         }
     }
 
-    private String formatLmpWithInstructions(String lmpContent, String instruction) {
-        String baseInstructions = """
-                Follow these instructions **exactly and without deviation**:
-                * Wrap the entire output in a **single fenced code block** using triple backticks (e.g., \\`\\`\\`txt). This outer block must contain the complete contents of the LMP file.
-                * Inside the LMP file:
-                  - Do **not** include any fenced code blocks (e.g., \\`\\`\\`), markdown, or any kind of code formatting.
-                  - Output must be **raw plain text only**.
-                  - Use this format for each file:
-                    [FILE_START: path/to/file.ext] \s
-                    ...file contents... \s
-                    [FILE_END: path/to/file.ext]
-                * The LMP file must contain **modified files** only.
-                * Always return the **complete modified file(s)** — do not include placeholders like "rest of file" or "..." and do not omit unchanged parts.
-                * Preserve the **exact directory and file structure**.
-                * Do **not** do unrequested modifications.
-                * For all documentation files (e.g., README, guides, manuals), use the **AsciiDoc (.adoc)** format. \s
-                  - Do **not** use Markdown under any circumstances.
-                  - Apply AsciiDoc syntax consistently throughout all documentation files.
-                * DO NO EXPLAIN NOTHING, JUST SEND THE PROJECT, PLEASE!!!
-                """;
-
-        return """
-                <rules>
-                  %s
-                </rules>
-                <files>
-                  ```
-                  %s
-                  ```
-                </files>
-                <instruction>
-                  %s
-                </instruction>
-                """.formatted(baseInstructions, lmpContent, instruction);
+    private String formatInstructionsHeader() {
+        String rules = LmpSettings.getInstance().getState().allowPatches
+                ? BASE_INSTRUCTIONS.replace(FULL_FILES_RULE, PATCH_RULE)
+                : BASE_INSTRUCTIONS;
+        return "<rules>\n  " + rules + "\n</rules>\n<files>\n  ```\n  ";
+    }
+
+    private String formatInstructionsFooter(String instruction) {
+        return "\n  ```\n</files>\n<instruction>\n  " + instruction + "\n</instruction>\n";
     }
 
     private static class InstructionDialog extends DialogWrapper {
@@ -0,0 +1,252 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.diff.DiffContentFactory;
+import com.intellij.diff.DiffDialogHints;
+import com.intellij.diff.DiffManager;
+import com.intellij.diff.chains.DiffRequestProducer;
+import com.intellij.diff.chains.DiffRequestProducerException;
+import com.intellij.diff.chains.SimpleDiffRequestChain;
+import com.intellij.diff.contents.DiffContent;
+import com.intellij.diff.requests.DiffRequest;
+import com.intellij.diff.requests.SimpleDiffRequest;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.fileTypes.UnknownFileType;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.UserDataHolder;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Diffs of LMP bodies against the project; existing files are read off the EDT and kept in a small cache
+final class LmpDiffPreview {
+
+    private static final int CACHE_ENTRIES = 64;
+    // Larger files are still diffed, just not cached
+    private static final int MAX_CACHED_CHARS = 1024 * 1024;
+
+    private final Project project;
+    // Existing file text by key, valid while the stamp and size match; guarded by itself
+    private final Map<String, Existing> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Existing> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    };
+
+    LmpDiffPreview(Project project) {
+        this.project = project;
+    }
+
+    // Diff against the existing file, or a preview of the new one; a newer click supersedes a pending one.
+    // Patches are applied to the existing file first, so the diff shows the result and not the hunks
+    void show(LmpIndex index, String filePath) {
+        LmpIndex.Entry entry = index.getEntry(filePath);
+        Path target = Paths.get(project.getBasePath()).resolve(filePath);
+        ReadAction.nonBlocking(() -> new Proposal(loadExisting(target), index, entry))
+                .coalesceBy(this)
+                .expireWith(project)
+                .finishOnUiThread(ModalityState.defaultModalityState(), proposal -> {
+                    if (proposal.error != null) {
+                        Messages.showErrorDialog(project, "Patch for " + filePath + " does not apply: " + proposal.error, "LMP Patch");
+                    } else if (proposal.existing != null || entry.isPatch()) {
+                        DiffManager.getInstance().showDiff(project,
+                                createRequest(filePath, proposal.existing, proposal.proposed), DiffDialogHints.DEFAULT);
+                    } else {
+                        showFilePreview(filePath, proposal.proposed.toString());
+                    }
+                })
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    // One diff window over every file the LMP adds or changes; each diff is only built when navigated to
+    void reviewAll(LmpIndex index) {
+        Path basePath = Paths.get(project.getBasePath());
+        new Task.Backgroundable(project, "Finding changed files", true) {
+            private final List<DiffRequestProducer> producers = new ArrayList<>();
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(false);
+                int done = 0;
+                for (LmpIndex.Entry entry : index.getFileEntries()) {
+                    indicator.checkCanceled();
+                    indicator.setFraction((double) done++ / index.size());
+                    Path target = basePath.resolve(entry.getPath());
+                    Proposal proposal = ReadAction.compute(() -> new Proposal(loadExisting(target), index, entry));
+                    // Patches that don't apply are listed too; their diff shows why
+                    if (proposal.error != null || proposal.existing == null
+                            || !proposal.existing.toString().contentEquals(proposal.proposed)) {
+                        producers.add(new FileDiffProducer(entry, target, index));
+                    }
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (producers.isEmpty()) {
+                    Messages.showInfoMessage(project, "All files in the LMP match the project.", "LMP Review");
+                    return;
+                }
+                SimpleDiffRequestChain chain = SimpleDiffRequestChain.fromProducers(producers);
+                DiffManager.getInstance().showDiff(project, chain, DiffDialogHints.DEFAULT);
+            }
+        }.queue();
+    }
+
+    // Must run in a read action; null when there is no existing text file to compare with
+    private CharSequence loadExisting(Path path) {
+        try {
+            VirtualFile file = LocalFileSystem.getInstance().findFileByNioFile(path);
+            if (file != null) {
+                if (file.isDirectory() || file.getFileType().isBinary()) {
+                    return null;
+                }
+                // Open documents come first, unsaved changes included
+                Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+                if (document != null) {
+                    return document.getImmutableCharSequence();
+                }
+                return cached(file.getUrl(), file.getModificationStamp(), file.getLength(), () -> VfsUtilCore.loadText(file));
+            }
+            // Not in the VFS yet, for instance just extracted
+            if (!Files.isRegularFile(path)) {
+                return null;
+            }
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return cached(path.toString(), LmpSourceFile.stamp(attrs), attrs.size(), () -> Files.readString(path));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private CharSequence cached(String key, long stamp, long size, TextLoader loader) throws IOException {
+        synchronized (cache) {
+            Existing existing = cache.get(key);
+            if (existing != null && existing.stamp == stamp && existing.size == size) {
+                return existing.text;
+            }
+        }
+        String text = loader.load();
+        if (text.length() <= MAX_CACHED_CHARS) {
+            synchronized (cache) {
+                cache.put(key, new Existing(stamp, size, text));
+            }
+        }
+        return text;
+    }
+
+    private DiffRequest createRequest(String filePath, CharSequence existing, CharSequence lmpContent) {
+        DiffContentFactory contentFactory = DiffContentFactory.getInstance();
+        FileType fileType = fileTypeOf(filePath);
+        DiffContent existingContent = existing != null
+                ? contentFactory.create(project, existing.toString(), fileType)
+                : contentFactory.createEmpty();
+        DiffContent lmpDiffContent = contentFactory.create(project, lmpContent.toString(), fileType);
+        return new SimpleDiffRequest(
+                (existing != null ? "Compare: " : "New file: ") + filePath,
+                existingContent,
+                lmpDiffContent,
+                existing != null ? "Existing File" : "Missing File",
+                "LMP Content"
+        );
+    }
+
+    private void showFilePreview(String filePath, String content) {
+        // Create a virtual file for preview
+        String fileName = Paths.get(filePath).getFileName().toString();
+        LightVirtualFile virtualFile = new LightVirtualFile(fileName, content);
+        FileType detectedFileType = fileTypeOf(fileName);
+        if (detectedFileType != UnknownFileType.INSTANCE) {
+            virtualFile.setFileType(detectedFileType);
+        }
+        FileEditorManager.getInstance(project).openFile(virtualFile, true);
+    }
+
+    private static FileType fileTypeOf(String filePath) {
+        return FileTypeRegistry.getInstance().getFileTypeByFileName(Paths.get(filePath).getFileName().toString());
+    }
+
+    private final class FileDiffProducer implements DiffRequestProducer {
+        private final LmpIndex.Entry entry;
+        private final Path target;
+        private final LmpIndex index;
+
+        private FileDiffProducer(LmpIndex.Entry entry, Path target, LmpIndex index) {
+            this.entry = entry;
+            this.target = target;
+            this.index = index;
+        }
+
+        @Override
+        public @NotNull String getName() {
+            return entry.getPath();
+        }
+
+        // Called by the diff window on a background thread when the user navigates to this file
+        @Override
+        public @NotNull DiffRequest process(@NotNull UserDataHolder context, @NotNull ProgressIndicator indicator)
+                throws DiffRequestProducerException, ProcessCanceledException {
+            Proposal proposal = ReadAction.compute(() -> new Proposal(loadExisting(target), index, entry));
+            indicator.checkCanceled();
+            if (proposal.error != null) {
+                throw new DiffRequestProducerException("Patch does not apply: " + proposal.error);
+            }
+            return createRequest(entry.getPath(), proposal.existing, proposal.proposed);
+        }
+    }
+
+    // The existing text and what the LMP would make of it; error is set when a patch does not apply
+    private static final class Proposal {
+        private final CharSequence existing;
+        private CharSequence proposed;
+        private String error;
+
+        private Proposal(CharSequence existing, LmpIndex index, LmpIndex.Entry entry) {
+            this.existing = existing;
+            try {
+                proposed = index.getContent(entry, existing != null ? existing : "");
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+        }
+    }
+
+    private interface TextLoader {
+        String load() throws IOException;
+    }
+
+    private static final class Existing {
+        private final long stamp;
+        private final long size;
+        private final String text;
+
+        private Existing(long stamp, long size, String text) {
+            this.stamp = stamp;
+            this.size = size;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Packs the selection straight into a file, for payloads too large for the clipboard; no String of the whole text is built
+public class LmpExportAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(LmpExportAction.class);
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        VirtualFile[] files = e.getData(CommonDataKeys.VIRTUAL_FILE_ARRAY);
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        FileSaverDescriptor descriptor = new FileSaverDescriptor("Export as LMP File", "Choose where to write the LMP file", "lmp");
+        String defaultName = (files.length == 1 ? files[0].getName() : project.getName()) + ".lmp";
+        VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project)
+                .save(ProjectUtil.guessProjectDir(project), defaultName);
+        if (wrapper == null) {
+            return;
+        }
+        Path target = wrapper.getFile().toPath().toAbsolutePath();
+
+        LmpPacker packer = LmpCopySupport.createPacker(project);
+        // An earlier export inside the selection would otherwise be read while it is being overwritten
+        Path projectRoot = Path.of(project.getBasePath());
+        String targetPath = target.startsWith(projectRoot) ? LmpPacker.toLmpPath(projectRoot, target) : null;
+
+        new Task.Backgroundable(project, "Exporting LMP", true) {
+            private IOException failure;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setText2(target.toString());
+                // The target is only touched once the selection is listed
+                boolean opened = false;
+                boolean written = false;
+                try {
+                    // Walked here rather than on the EDT; the walk checks for cancellation at every file
+                    List<List<LmpSourceFile>> selection = new ArrayList<>();
+                    for (List<LmpSourceFile> sources : LmpCopySupport.listSelection(packer, files, project)) {
+                        List<LmpSourceFile> kept = new ArrayList<>(sources);
+                        kept.removeIf(source -> source.getRelPath().equals(targetPath));
+                        selection.add(kept);
+                    }
+                    opened = true;
+                    try (LmpWriter out = new LmpWriter(new BufferedWriter(new CancellableWriter(Channels.newWriter(
+                            FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                    StandardOpenOption.WRITE), StandardCharsets.UTF_8), indicator)))) {
+                        LmpCopySupport.pack(packer, selection, out);
+                    }
+                    written = true;
+                } catch (IOException ex) {
+                    failure = ex;
+                } finally {
+                    if (opened && !written) {
+                        // Failed or cancelled: a partial LMP file would extract as a truncated project
+                        deletePartial(target);
+                    }
+                    LmpStatsListener.publish(project, "Export as LMP", packer.getStats());
+                    LocalFileSystem.getInstance().refreshNioFiles(List.of(target));
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (failure != null) {
+                    LOG.warn("LMP export failed", failure);
+                    LmpNotifications.error(project, "Export as LMP", "Error exporting files: " + failure.getMessage());
+                    return;
+                }
+                LmpPackReport report = packer.getReport();
+                String text = LmpNotifications.describe("Exported", report) + "<br>" + StringUtil.escapeXmlEntities(target.toString());
+                if (report.isBudgetExceeded()) {
+                    LmpNotifications.warning(project, "Export as LMP", text);
+                } else {
+                    LmpNotifications.info(project, "Export as LMP", text);
+                }
+            }
+        }.queue();
+    }
+
+    private static void deletePartial(Path target) {
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            LOG.warn("Could not delete the partial LMP export " + target, e);
+        }
+    }
+
+    // Lets a cancelled export stop at the next write, wherever the packer is
+    private static class CancellableWriter extends FilterWriter {
+        private final ProgressIndicator indicator;
+
+        private CancellableWriter(Writer out, ProgressIndicator indicator) {
+            super(out);
+            this.indicator = indicator;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            indicator.checkCanceled();
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            indicator.checkCanceled();
+            super.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            indicator.checkCanceled();
+            super.write(text, offset, length);
+        }
+    }
+}
@@ -1,19 +1,25 @@
 package dev.zerr.lmpactions;
 
 import com.intellij.openapi.actionSystem.*;
-import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.datatransfer.DataFlavor;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Objects;
 
 public class LmpExtractAction extends AnAction {
 
+    private static final Logger LOG = Logger.getInstance(LmpExtractAction.class);
+
     @Override
     public void actionPerformed(@NotNull AnActionEvent e) {
         Project project = e.getProject();
@@ -37,14 +43,67 @@ public class LmpExtractAction extends AnAction {
             return;
         }
 
-        WriteCommandAction.runWriteCommandAction(project, () -> {
-            try {
-                LmpOperator operator = new LmpOperator();
-                int count = operator.extract(lmpContent, Path.of(baseDir.getPath()));
-                Messages.showInfoMessage(project, "Extracted " + count + " files to project root.", "LMP Extract");
-            } catch (Exception ex) {
-                Messages.showErrorDialog(project, "Extraction failed: " + ex.getMessage(), "LMP Extract");
+        Path destDir = Path.of(baseDir.getPath());
+        extractInBackground(project, destDir, (extractor, progress) -> extractor.extract(lmpContent, destDir, progress));
+    }
+
+    interface Extraction {
+        LmpExtractReport run(LmpExtractor extractor, LmpExtractor.Progress progress) throws IOException;
+    }
+
+    // Runs the extraction with progress and cancellation, then refreshes what changed and reports the result
+    static void extractInBackground(Project project, Path destDir, Extraction extraction) {
+        new Task.Backgroundable(project, "Extracting LMP", true) {
+            private LmpExtractReport report;
+            private Exception failure;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(false);
+                LmpExtractor extractor = new LmpExtractor(LmpCacheService.getInstance(project).getContentHashes());
+                try {
+                    report = extraction.run(extractor, new LmpExtractor.Progress() {
+                        @Override
+                        public boolean isCanceled() {
+                            return indicator.isCanceled();
+                        }
+
+                        @Override
+                        public void fileExtracted(String path, int done, int total) {
+                            indicator.setText2(path);
+                            indicator.setFraction((double) done / total);
+                        }
+                    });
+                } catch (Exception ex) {
+                    // Cancellation is reported by the task itself, through onCancel instead of onSuccess
+                    failure = ex;
+                }
+                LmpStatsListener.publish(project, "Extract LMP", extractor.getStats());
+                // The batch was committed through NIO; one bulk refresh of just the changed roots picks it all up.
+                // A failed batch was rolled back, but if the rollback itself failed the whole tree is rescanned
+                indicator.setText2("Refreshing project files");
+                if (failure == null) {
+                    if (!report.getChangedRoots().isEmpty()) {
+                        LocalFileSystem.getInstance().refreshNioFiles(report.getChangedRoots(), false, true, null);
+                    }
+                } else if (failure.getSuppressed().length > 0) {
+                    VirtualFile dir = LocalFileSystem.getInstance().refreshAndFindFileByNioFile(destDir);
+                    if (dir != null) {
+                        VfsUtil.markDirtyAndRefresh(false, true, true, dir);
+                    }
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (failure != null) {
+                    LOG.warn("LMP extraction failed", failure);
+                    Messages.showErrorDialog(project, "Extraction failed: " + failure.getMessage(), "LMP Extract");
+                } else {
+                    Messages.showInfoMessage(project, "Extracted " + report.getTotalFiles() + " files to " + destDir + ": "
+                            + report + ".", "LMP Extract");
+                }
             }
-        });
+        }.queue();
     }
 }
@@ -0,0 +1,48 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+// Extracts an LMP file on disk into the project root; the file is mapped, never loaded as a String
+public class LmpExtractFileAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        VirtualFile source = e.getData(CommonDataKeys.VIRTUAL_FILE);
+        if (source == null || source.isDirectory() || !source.isInLocalFileSystem()) {
+            source = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleLocalFileDescriptor(), project, null);
+            if (source == null) {
+                return;
+            }
+        }
+
+        VirtualFile baseDir = project.getBaseDir();
+        if (baseDir == null) {
+            Messages.showErrorDialog(project, "Cannot determine project base directory.", "LMP Extract");
+            return;
+        }
+
+        // The mapping reads the file on disk, so unsaved edits to it are saved first
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        Document document = documentManager.getCachedDocument(source);
+        if (document != null && documentManager.isDocumentUnsaved(document)) {
+            documentManager.saveDocument(document);
+        }
+
+        Path lmpFile = source.toNioPath();
+        Path destDir = Path.of(baseDir.getPath());
+        LmpExtractAction.extractInBackground(project, destDir, (extractor, progress) -> extractor.extract(lmpFile, destDir, progress));
+    }
+}
@@ -0,0 +1,158 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.*;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.fileTypes.PlainTextFileType;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Editor-backed input: the text lives in a platform Document, so large pastes are laid out lazily with soft wraps
+// instead of being word-wrapped up front by a Swing text component
+public class LmpInputEditor {
+
+    // Above this many chars new file bodies start folded
+    private static final int FOLD_COLLAPSED_THRESHOLD = 1024 * 1024;
+    private static final TextAttributesKey MARKER_ATTRIBUTES = DefaultLanguageHighlighterColors.METADATA;
+
+    private final EditorEx editor;
+    // One per entry of the last decorated index, in its order
+    private final List<Decoration> decorations = new ArrayList<>();
+    private long decoratedVersion = -1;
+
+    public LmpInputEditor(Project project, Disposable parentDisposable) {
+        EditorFactory editorFactory = EditorFactory.getInstance();
+        Document document = editorFactory.createDocument("");
+        editor = (EditorEx) editorFactory.createEditor(document, project, PlainTextFileType.INSTANCE, false);
+        Disposer.register(parentDisposable, () -> editorFactory.releaseEditor(editor));
+
+        EditorSettings settings = editor.getSettings();
+        settings.setUseSoftWraps(true);
+        settings.setLineNumbersShown(true);
+        settings.setFoldingOutlineShown(true);
+        settings.setLineMarkerAreaShown(false);
+        settings.setAdditionalLinesCount(0);
+        settings.setAdditionalColumnsCount(0);
+        editor.setPlaceholder("Paste LMP content here");
+    }
+
+    public JComponent getComponent() {
+        return editor.getComponent();
+    }
+
+    public Document getDocument() {
+        return editor.getDocument();
+    }
+
+    // Runs on the EDT; an index parsed from older text is skipped, the parse of the current text follows.
+    // Highlighters and folds are range markers that move with the text, so after a reindex of the decorated index
+    // only the entries it parsed again are redecorated
+    public void decorate(LmpIndex index) {
+        Document document = editor.getDocument();
+        if (index.getSource().length() != document.getTextLength()) {
+            // The next index is reindexed from this one, which the decorations do not match
+            decoratedVersion = -1;
+            return;
+        }
+
+        List<LmpIndex.Entry> entries = index.getEntries();
+        boolean incremental = index.getBaseVersion() == decoratedVersion
+                && index.getKeptLeading() + index.getKeptTrailing() <= decorations.size();
+        int leading = incremental ? index.getKeptLeading() : 0;
+        int trailing = incremental ? index.getKeptTrailing() : 0;
+        List<Decoration> replaced = decorations.subList(leading, decorations.size() - trailing);
+        List<LmpIndex.Entry> parsed = entries.subList(leading, entries.size() - trailing);
+
+        CharSequence text = document.getImmutableCharSequence();
+        boolean collapseNew = text.length() > FOLD_COLLAPSED_THRESHOLD;
+        MarkupModel markup = editor.getMarkupModel();
+        FoldingModel folding = editor.getFoldingModel();
+        List<Decoration> created = new ArrayList<>(parsed.size());
+        folding.runBatchFoldingOperation(() -> {
+            // New regions keep the expanded state of the path's old one
+            Set<String> expanded = new HashSet<>();
+            Set<String> collapsed = new HashSet<>();
+            for (Decoration decoration : replaced) {
+                if (decoration.fold != null && decoration.fold.isValid()) {
+                    (decoration.fold.isExpanded() ? expanded : collapsed).add(decoration.path);
+                    folding.removeFoldRegion(decoration.fold);
+                }
+                markup.removeHighlighter(decoration.header);
+                markup.removeHighlighter(decoration.footer);
+            }
+            for (LmpIndex.Entry entry : parsed) {
+                RangeHighlighter header = markup.addRangeHighlighter(MARKER_ATTRIBUTES, entry.getHeaderStart(),
+                        entry.getBodyStart(), HighlighterLayer.SYNTAX, HighlighterTargetArea.EXACT_RANGE);
+                RangeHighlighter footer = markup.addRangeHighlighter(MARKER_ATTRIBUTES, entry.getBodyEnd(),
+                        entry.getBlockEnd(), HighlighterLayer.SYNTAX, HighlighterTargetArea.EXACT_RANGE);
+                FoldRegion region = addFold(document, text, entry);
+                if (region != null) {
+                    boolean collapse = collapsed.contains(entry.getPath()) || (collapseNew && !expanded.contains(entry.getPath()));
+                    region.setExpanded(!collapse);
+                }
+                created.add(new Decoration(entry.getPath(), header, footer, region));
+            }
+        });
+        replaced.clear();
+        replaced.addAll(created);
+        decoratedVersion = index.getVersion();
+    }
+
+    // From the end of the FILE_START line to the end of the last body line, so both markers stay visible
+    private FoldRegion addFold(Document document, CharSequence text, LmpIndex.Entry entry) {
+        int start = entry.getBodyStart() - 1;
+        int end = entry.getBodyEnd() - 1;
+        if (start < entry.getHeaderStart() || end <= start || text.charAt(start) != '\n' || text.charAt(end) != '\n') {
+            return null;
+        }
+        int lines = document.getLineNumber(end) - document.getLineNumber(start);
+        return editor.getFoldingModel().addFoldRegion(start, end, " … " + lines + (lines == 1 ? " line" : " lines"));
+    }
+
+    // Replaces the input with a read-only note, for payloads handled without putting their text in the editor
+    public void showNote(String note) {
+        setText(note);
+        editor.getMarkupModel().removeAllHighlighters();
+        FoldingModel folding = editor.getFoldingModel();
+        folding.runBatchFoldingOperation(() -> {
+            for (FoldRegion region : folding.getAllFoldRegions()) {
+                folding.removeFoldRegion(region);
+            }
+        });
+        decorations.clear();
+        decoratedVersion = -1;
+        editor.setViewer(true);
+    }
+
+    public void setText(String text) {
+        editor.setViewer(false);
+        ApplicationManager.getApplication().runWriteAction(() -> editor.getDocument().setText(text));
+    }
+
+    // What decorate added for one entry; the fold is null when the body has no full line
+    private static final class Decoration {
+        private final String path;
+        private final RangeHighlighter header;
+        private final RangeHighlighter footer;
+        private final FoldRegion fold;
+
+        private Decoration(String path, RangeHighlighter header, RangeHighlighter footer, FoldRegion fold) {
+            this.path = path;
+            this.header = header;
+            this.footer = footer;
+            this.fold = fold;
+        }
+    }
+}
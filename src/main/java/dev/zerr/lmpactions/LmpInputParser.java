@@ -0,0 +1,93 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.util.Alarm;
+
+import javax.swing.*;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+public class LmpInputParser {
+
+    private static final int DEBOUNCE_MS = 300;
+
+    private final Document document;
+    private final Alarm alarm;
+    private final BiConsumer<LmpIndex, LmpTokenEstimator> onParsed;
+    // Asked on every parse, so a change to the estimator setting applies to the next one
+    private final Supplier<LmpTokenEstimator> estimators;
+
+    // Edits since the last parse, merged into one replaced range; guarded by 'this'
+    private int dirtyStart = -1;
+    private int dirtyOldLength;
+    private int dirtyNewLength;
+
+    // Only touched from the alarm thread, which runs requests one at a time
+    private LmpIndex index = LmpIndex.parse("");
+
+    public LmpInputParser(Document document, Disposable parentDisposable, Supplier<LmpTokenEstimator> estimators,
+                          BiConsumer<LmpIndex, LmpTokenEstimator> onParsed) {
+        this.document = document;
+        this.estimators = estimators;
+        this.alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, parentDisposable);
+        this.onParsed = onParsed;
+
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(DocumentEvent e) {
+                recordEdit(e.getOffset(), e.getOldLength(), e.getNewLength());
+            }
+        }, parentDisposable);
+    }
+
+    private void recordEdit(int offset, int removed, int inserted) {
+        synchronized (this) {
+            if (dirtyStart < 0) {
+                dirtyStart = offset;
+                dirtyOldLength = removed;
+                dirtyNewLength = inserted;
+            } else {
+                int start = Math.min(dirtyStart, offset);
+                int end = Math.max(dirtyStart + dirtyNewLength, offset + removed);
+                dirtyOldLength = end - (dirtyNewLength - dirtyOldLength) - start;
+                dirtyNewLength = end + (inserted - removed) - start;
+                dirtyStart = start;
+            }
+        }
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::reparse, DEBOUNCE_MS);
+    }
+
+    private void reparse() {
+        CharSequence[] text = new CharSequence[1];
+        int[] edit = new int[3];
+        // Document events fire inside write actions, so under a read action the text and the pending edit agree.
+        // The immutable snapshot shares structure with the document instead of copying the whole text
+        ReadAction.run(() -> {
+            text[0] = document.getImmutableCharSequence();
+            synchronized (this) {
+                edit[0] = dirtyStart;
+                edit[1] = dirtyOldLength;
+                edit[2] = dirtyNewLength;
+                dirtyStart = -1;
+            }
+        });
+        if (edit[0] < 0) {
+            return;
+        }
+
+        boolean consistent = index.getSource().length() + edit[2] - edit[1] == text[0].length();
+        LmpIndex parsed = consistent
+                ? index.reindex(text[0], edit[0], edit[1], edit[2])
+                : LmpIndex.parse(text[0]);
+        index = parsed;
+        // Counted here so the EDT only reads cached estimates; blocks carried over by the reindex keep theirs
+        LmpTokenEstimator estimator = estimators.get();
+        parsed.getTotalTokens(estimator);
+        SwingUtilities.invokeLater(() -> onParsed.accept(parsed, estimator));
+    }
+}
@@ -0,0 +1,87 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public final class LmpNotifications {
+
+    private static final String GROUP_ID = "LMP Actions";
+    private static final int MAX_LISTED_FILES = 10;
+    private static final int MAX_LISTED_TOKEN_FILES = 5;
+
+    private LmpNotifications() {
+    }
+
+    public static void info(Project project, String title, String content) {
+        notify(project, title, content, NotificationType.INFORMATION);
+    }
+
+    public static void warning(Project project, String title, String content) {
+        notify(project, title, content, NotificationType.WARNING);
+    }
+
+    public static void error(Project project, String title, String content) {
+        notify(project, title, content, NotificationType.ERROR);
+    }
+
+    private static void notify(Project project, String title, String content, NotificationType type) {
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup(GROUP_ID)
+                .createNotification(title, content, type)
+                .notify(project);
+    }
+
+    // "Copied N files, ~T tokens." plus the largest files, budget state and the skipped files and why, as notification HTML
+    public static String describe(LmpPackReport report) {
+        return describe("Copied", report);
+    }
+
+    public static String describe(String verb, LmpPackReport report) {
+        StringBuilder text = new StringBuilder();
+        text.append(verb).append(' ').append(report.getFilesWritten()).append(report.getFilesWritten() == 1 ? " file" : " files");
+        if (report.hasTokenCounts()) {
+            text.append(", ~").append(report.getTotalTokens()).append(" tokens");
+        }
+        text.append('.');
+        if (report.getCacheHits() > 0) {
+            text.append("<br>").append(report.getCacheHits()).append(" unchanged, ")
+                    .append(report.getCacheMisses()).append(" read from disk.");
+        }
+        if (!report.getDuplicates().isEmpty()) {
+            int duplicates = report.getDuplicates().size();
+            text.append("<br>").append(duplicates).append(duplicates == 1 ? " duplicate" : " duplicates")
+                    .append(" written as a reference to the first copy.");
+        }
+        if (report.isBudgetExceeded()) {
+            text.append("<br><b>Token budget of ").append(report.getTokenBudget()).append(" exceeded.</b>");
+        }
+        if (report.hasTokenCounts() && report.getFilesWritten() > 1) {
+            List<Map.Entry<String, Long>> largest = new ArrayList<>(report.getFileTokens().entrySet());
+            largest.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            text.append("<br>Largest:");
+            for (int i = 0; i < Math.min(largest.size(), MAX_LISTED_TOKEN_FILES); i++) {
+                text.append("<br>").append(StringUtil.escapeXmlEntities(largest.get(i).getKey()))
+                        .append(" — ~").append(largest.get(i).getValue()).append(" tokens");
+            }
+        }
+        List<LmpPackReport.SkippedFile> skipped = report.getSkippedFiles();
+        if (!skipped.isEmpty()) {
+            text.append("<br>Skipped ").append(skipped.size()).append(':');
+            for (int i = 0; i < Math.min(skipped.size(), MAX_LISTED_FILES); i++) {
+                LmpPackReport.SkippedFile file = skipped.get(i);
+                text.append("<br>").append(StringUtil.escapeXmlEntities(file.getPath()))
+                        .append(" — ").append(StringUtil.escapeXmlEntities(file.getReason()));
+            }
+            if (skipped.size() > MAX_LISTED_FILES) {
+                text.append("<br>and ").append(skipped.size() - MAX_LISTED_FILES).append(" more");
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import org.jetbrains.annotations.NotNull;
+
+@Service(Service.Level.APP)
+@State(name = "LmpSettings", storages = @Storage("lmp-actions.xml"))
+public final class LmpSettings implements PersistentStateComponent<LmpSettings.Settings> {
+
+    private Settings settings = new Settings();
+
+    public static LmpSettings getInstance() {
+        return ApplicationManager.getApplication().getService(LmpSettings.class);
+    }
+
+    @Override
+    public @NotNull Settings getState() {
+        return settings;
+    }
+
+    @Override
+    public void loadState(@NotNull Settings state) {
+        this.settings = state;
+    }
+
+    public static class Settings {
+        public LmpTokenEstimator.Mode tokenEstimator = LmpTokenEstimator.Mode.APPROX_BPE;
+        // 0 means unlimited
+        public long tokenBudget;
+        public LmpPackOptions.BudgetPolicy budgetPolicy = LmpPackOptions.BudgetPolicy.WARN;
+        // Larger files are skipped and listed in the copy notification
+        public long maxFileSize = LmpFileClassifier.DEFAULT_MAX_FILE_SIZE;
+        // Copy with instruction lets the model answer with FILE_PATCH blocks
+        public boolean allowPatches = true;
+        // Keeps every open project rendered in memory, so Copy Project as LMP needs no packing
+        public boolean projectSnapshot;
+    }
+}
@@ -0,0 +1,98 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.openapi.ui.ComboBox;
+import com.intellij.ui.components.JBCheckBox;
+import com.intellij.util.ui.FormBuilder;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+
+public class LmpSettingsConfigurable implements Configurable {
+
+    private static final long MB = 1024 * 1024;
+    private static final long MAX_FILE_SIZE_LIMIT_MB = 64 * 1024;
+
+    private ComboBox<LmpTokenEstimator.Mode> estimatorCombo;
+    private JSpinner budgetSpinner;
+    private ComboBox<LmpPackOptions.BudgetPolicy> policyCombo;
+    private JSpinner maxFileSizeSpinner;
+    private JBCheckBox allowPatchesCheckBox;
+    private JBCheckBox projectSnapshotCheckBox;
+
+    @Override
+    public String getDisplayName() {
+        return "LMP Actions";
+    }
+
+    @Override
+    public @Nullable JComponent createComponent() {
+        estimatorCombo = new ComboBox<>(LmpTokenEstimator.Mode.values());
+        budgetSpinner = new JSpinner(new SpinnerNumberModel(Long.valueOf(0), Long.valueOf(0), Long.valueOf(Long.MAX_VALUE), Long.valueOf(1000)));
+        policyCombo = new ComboBox<>(LmpPackOptions.BudgetPolicy.values());
+        maxFileSizeSpinner = new JSpinner(new SpinnerNumberModel(Long.valueOf(1), Long.valueOf(1), Long.valueOf(MAX_FILE_SIZE_LIMIT_MB), Long.valueOf(1)));
+        allowPatchesCheckBox = new JBCheckBox("Let the model answer with patches for small changes");
+        projectSnapshotCheckBox = new JBCheckBox("Keep projects rendered in memory for Copy Project as LMP");
+        return FormBuilder.createFormBuilder()
+                .addLabeledComponent("Token estimator:", estimatorCombo)
+                .addLabeledComponent("Token budget (0 = unlimited):", budgetSpinner)
+                .addLabeledComponent("When over budget:", policyCombo)
+                .addLabeledComponent("Skip files larger than (MB):", maxFileSizeSpinner)
+                .addComponent(allowPatchesCheckBox)
+                .addComponent(projectSnapshotCheckBox)
+                .addComponentFillVertically(new JPanel(), 0)
+                .getPanel();
+    }
+
+    @Override
+    public boolean isModified() {
+        LmpSettings.Settings settings = LmpSettings.getInstance().getState();
+        return estimatorCombo.getSelectedItem() != settings.tokenEstimator
+                || getBudget() != settings.tokenBudget
+                || policyCombo.getSelectedItem() != settings.budgetPolicy
+                || getMaxFileSize() != settings.maxFileSize
+                || allowPatchesCheckBox.isSelected() != settings.allowPatches
+                || projectSnapshotCheckBox.isSelected() != settings.projectSnapshot;
+    }
+
+    @Override
+    public void apply() {
+        LmpSettings.Settings settings = LmpSettings.getInstance().getState();
+        settings.tokenEstimator = (LmpTokenEstimator.Mode) estimatorCombo.getSelectedItem();
+        settings.tokenBudget = getBudget();
+        settings.budgetPolicy = (LmpPackOptions.BudgetPolicy) policyCombo.getSelectedItem();
+        settings.maxFileSize = getMaxFileSize();
+        settings.allowPatches = allowPatchesCheckBox.isSelected();
+        settings.projectSnapshot = projectSnapshotCheckBox.isSelected();
+        LmpSnapshotService.applySettings();
+    }
+
+    @Override
+    public void reset() {
+        LmpSettings.Settings settings = LmpSettings.getInstance().getState();
+        estimatorCombo.setSelectedItem(settings.tokenEstimator);
+        budgetSpinner.setValue(settings.tokenBudget);
+        policyCombo.setSelectedItem(settings.budgetPolicy);
+        maxFileSizeSpinner.setValue(Math.max(1, settings.maxFileSize / MB));
+        allowPatchesCheckBox.setSelected(settings.allowPatches);
+        projectSnapshotCheckBox.setSelected(settings.projectSnapshot);
+    }
+
+    @Override
+    public void disposeUIResources() {
+        estimatorCombo = null;
+        budgetSpinner = null;
+        policyCombo = null;
+        maxFileSizeSpinner = null;
+        allowPatchesCheckBox = null;
+        projectSnapshotCheckBox = null;
+    }
+
+    private long getBudget() {
+        return ((Number) budgetSpinner.getValue()).longValue();
+    }
+
+    private long getMaxFileSize() {
+        return ((Number) maxFileSizeSpinner.getValue()).longValue() * MB;
+    }
+}
@@ -0,0 +1,358 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VFileProperty;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps an LmpSnapshot of the project's included files: built once in the background when the project opens, then
+// updated from VFS events by re-rendering only the files that changed. Copy Project as LMP writes it out as is
+@Service(Service.Level.PROJECT)
+public final class LmpSnapshotService implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(LmpSnapshotService.class);
+    private static final String GITIGNORE = "/.gitignore";
+    private static final long SYNC_POLL_MILLIS = 100;
+
+    private final Project project;
+    private final Path root;
+    // System-independent, like the paths of VFS events
+    private final String rootPath;
+    // Builds and updates run one at a time, in the order they were queued
+    private final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("LMP Snapshot", 1);
+    // Changed paths under the root not yet re-rendered, all handled by the next queued update
+    private final Set<String> changedPaths = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean updateQueued = new AtomicBoolean();
+    // Files last rendered from a document with unsaved changes; rendered again on sync, as they may have been reverted
+    private final Set<String> documentPaths = ConcurrentHashMap.newKeySet();
+    private volatile LmpSnapshot snapshot = new LmpSnapshot();
+    private volatile LmpExclusions exclusions;
+    private volatile LmpTokenEstimator.Mode estimatorMode;
+    private volatile long maxFileSize;
+    private volatile boolean ready;
+    private volatile MessageBusConnection connection;
+
+    public LmpSnapshotService(Project project) {
+        this.project = project;
+        String basePath = project.getBasePath();
+        this.root = basePath != null ? Path.of(basePath) : null;
+        this.rootPath = basePath != null ? FileUtil.toSystemIndependentName(basePath) : null;
+    }
+
+    public static LmpSnapshotService getInstance(Project project) {
+        return project.getService(LmpSnapshotService.class);
+    }
+
+    // Starts or stops the snapshot of every open project to match the settings
+    static void applySettings() {
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            getInstance(project).settingsChanged();
+        }
+    }
+
+    private void settingsChanged() {
+        LmpSettings.Settings settings = LmpSettings.getInstance().getState();
+        if (!settings.projectSnapshot) {
+            stop();
+        } else if (!isRunning()) {
+            start();
+        } else if (settings.tokenEstimator != estimatorMode || settings.maxFileSize != maxFileSize) {
+            // Token counts are kept with the chunks, and the size limit decides which files have one
+            ready = false;
+            executor.execute(this::build);
+        }
+    }
+
+    public synchronized void start() {
+        if (connection != null || root == null) {
+            return;
+        }
+        // Subscribed before the build is queued, so nothing changed while it runs is missed
+        connection = project.getMessageBus().connect(this);
+        connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends @NotNull VFileEvent> events) {
+                changed(events);
+            }
+        });
+        executor.execute(this::build);
+    }
+
+    public synchronized void stop() {
+        if (connection == null) {
+            return;
+        }
+        connection.disconnect();
+        connection = null;
+        ready = false;
+        changedPaths.clear();
+        // After whatever is queued, which then finds the service stopped
+        executor.execute(() -> {
+            if (!isRunning()) {
+                snapshot = new LmpSnapshot();
+                documentPaths.clear();
+            }
+        });
+    }
+
+    public boolean isRunning() {
+        return connection != null;
+    }
+
+    // True once the first build finished; until then the snapshot is empty
+    public boolean isReady() {
+        return ready;
+    }
+
+    public LmpSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Brings the snapshot up to date with every event so far and with unsaved documents, which send no VFS events.
+    // Blocks until done, so must not run on the EDT
+    public void sync(ProgressIndicator indicator) throws IOException {
+        Future<?> done = executor.submit(() -> {
+            update();
+            renderDocuments();
+        });
+        try {
+            while (true) {
+                try {
+                    done.get(SYNC_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    indicator.checkCanceled();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Snapshot update interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Snapshot update failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Runs on the EDT inside the write action, so it only records the paths
+    private void changed(List<? extends VFileEvent> events) {
+        boolean recorded = false;
+        for (VFileEvent event : events) {
+            if (event instanceof VFileMoveEvent) {
+                VFileMoveEvent move = (VFileMoveEvent) event;
+                recorded |= record(move.getOldPath());
+                recorded |= record(move.getNewPath());
+            } else if (event instanceof VFilePropertyChangeEvent) {
+                VFilePropertyChangeEvent property = (VFilePropertyChangeEvent) event;
+                if (property.isRename()) {
+                    recorded |= record(property.getOldPath());
+                    recorded |= record(property.getNewPath());
+                }
+            } else {
+                // Content changes, creations, copies and deletions
+                recorded |= record(event.getPath());
+            }
+        }
+        if (recorded && updateQueued.compareAndSet(false, true)) {
+            executor.execute(this::update);
+        }
+    }
+
+    private boolean record(String path) {
+        if (!FileUtil.isAncestor(rootPath, path, false)) {
+            return false;
+        }
+        changedPaths.add(path);
+        return true;
+    }
+
+    private void build() {
+        MessageBusConnection building = connection;
+        if (building == null) {
+            return;
+        }
+        // Whatever changed so far is listed below in its current state
+        changedPaths.clear();
+        // Fresh exclusions, as .gitignore rules are cached by the instance
+        LmpExclusions buildExclusions = LmpExclusions.defaults(root);
+        LmpSettings.Settings settings = LmpSettings.getInstance().getState();
+        LmpTokenEstimator.Mode mode = settings.tokenEstimator;
+        long maxSize = settings.maxFileSize;
+        List<LmpSourceFile> files;
+        try {
+            files = readNonBlocking(() -> {
+                VirtualFile baseDir = LocalFileSystem.getInstance().findFileByNioFile(root);
+                return baseDir != null && baseDir.isValid() ? LmpVfsSource.listFiles(baseDir, root, buildExclusions) : List.of();
+            });
+        } catch (ProcessCanceledException e) {
+            // Disposed while listing
+            return;
+        }
+        LmpSnapshot built = new LmpSnapshot();
+        LmpPacker packer = createPacker(buildExclusions, mode, maxSize);
+        try {
+            packer.render(files, built);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Project snapshot build failed", e);
+            buildFailed(building, e);
+            return;
+        } finally {
+            LmpStatsListener.publish(project, "Project snapshot", packer.getStats());
+        }
+        exclusions = buildExclusions;
+        estimatorMode = mode;
+        maxFileSize = maxSize;
+        snapshot = built;
+        documentPaths.clear();
+        ready = true;
+        LOG.info("Project snapshot built: " + built);
+    }
+
+    // Stopped rather than left running and never ready, so the next copy starts it and the build is tried again.
+    // Nothing is done if the service was restarted meanwhile, as a new build is then queued
+    private void buildFailed(MessageBusConnection building, Exception e) {
+        synchronized (this) {
+            if (connection != building) {
+                return;
+            }
+            stop();
+        }
+        LmpNotifications.error(project, "Project Snapshot", "The project snapshot could not be built: " + e.getMessage()
+                + ". It is built again on the next Copy Project as LMP.");
+    }
+
+    private void update() {
+        updateQueued.set(false);
+        if (!isRunning() || !ready) {
+            // Before the first build, the build itself picks the changes up
+            return;
+        }
+        List<String> paths = new ArrayList<>(changedPaths);
+        changedPaths.removeAll(paths);
+        for (String path : paths) {
+            if (path.endsWith(GITIGNORE)) {
+                build();
+                return;
+            }
+        }
+        refresh(paths);
+    }
+
+    private void renderDocuments() {
+        if (!isRunning() || !ready) {
+            return;
+        }
+        Set<String> unsaved = ReadAction.compute(() -> {
+            Set<String> paths = new HashSet<>();
+            FileDocumentManager documentManager = FileDocumentManager.getInstance();
+            for (Document document : documentManager.getUnsavedDocuments()) {
+                VirtualFile file = documentManager.getFile(document);
+                if (file != null && file.isInLocalFileSystem() && FileUtil.isAncestor(rootPath, file.getPath(), true)) {
+                    paths.add(file.getPath());
+                }
+            }
+            return paths;
+        });
+        Set<String> paths = new HashSet<>(documentPaths);
+        paths.addAll(unsaved);
+        documentPaths.clear();
+        documentPaths.addAll(unsaved);
+        refresh(paths);
+    }
+
+    // Lists the files now at paths, each a file or a whole directory, and swaps their chunks in
+    private void refresh(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        LmpExclusions currentExclusions = exclusions;
+        List<String> relPaths = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            relPaths.add(path.length() > rootPath.length() ? path.substring(rootPath.length() + 1) : "");
+        }
+        List<LmpSourceFile> files;
+        try {
+            files = readNonBlocking(() -> listFiles(paths, currentExclusions));
+        } catch (ProcessCanceledException e) {
+            return;
+        }
+        LmpSnapshot rendered = new LmpSnapshot();
+        try {
+            createPacker(currentExclusions, estimatorMode, maxFileSize).render(files, rendered);
+        } catch (IOException | RuntimeException e) {
+            // The paths were already taken from changedPaths; a rebuild lists them again, and stops the service if it
+            // fails too
+            LOG.warn("Project snapshot update failed, rebuilding", e);
+            ready = false;
+            executor.execute(this::build);
+            return;
+        }
+        snapshot.update(relPaths, rendered);
+    }
+
+    // Must run in a read action
+    private List<LmpSourceFile> listFiles(Collection<String> paths, LmpExclusions currentExclusions) {
+        List<LmpSourceFile> result = new ArrayList<>();
+        for (String path : paths) {
+            Path nioPath = Path.of(path);
+            if (!nioPath.equals(root) && currentExclusions.isExcludedTree(nioPath.getParent())) {
+                continue;
+            }
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+            if (file == null || !file.isValid()) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                result.addAll(LmpVfsSource.listFiles(file, root, currentExclusions));
+            } else if (!file.is(VFileProperty.SPECIAL) && !currentExclusions.isExcludedFile(nioPath)) {
+                result.add(LmpVfsSource.of(file, root));
+            }
+        }
+        return result;
+    }
+
+    // Walks in a read action that gives way to write actions, typing included, and starts over after each one, so a
+    // walk of a large project never blocks the UI. Throws ProcessCanceledException once the service is disposed
+    private <T> T readNonBlocking(Callable<T> walk) {
+        return ReadAction.nonBlocking(walk).expireWith(this).executeSynchronously();
+    }
+
+    // Budget and deduplication are applied when the snapshot is written; the chunk cache would only hold a second copy
+    private LmpPacker createPacker(LmpExclusions packExclusions, LmpTokenEstimator.Mode mode, long maxSize) {
+        return new LmpPacker(new LmpPackOptions()
+                .setExclusions(packExclusions)
+                .setParallelism(Runtime.getRuntime().availableProcessors())
+                .setMaxFileSize(maxSize)
+                .setTokenEstimator(new LmpTokenEstimator(mode))
+                .setTokenCache(LmpCacheService.getInstance(project).getTokenCache())
+                .setDeduplicate(true));
+    }
+
+    // The connection is disposed with the service; queued work then finds it stopped
+    @Override
+    public void dispose() {
+        connection = null;
+    }
+}
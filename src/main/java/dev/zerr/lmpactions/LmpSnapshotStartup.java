@@ -0,0 +1,16 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+
+// Starts the project snapshot when it is enabled; the build itself runs in the background
+public class LmpSnapshotStartup implements StartupActivity.DumbAware {
+
+    @Override
+    public void runActivity(@NotNull Project project) {
+        if (LmpSettings.getInstance().getState().projectSnapshot) {
+            LmpSnapshotService.getInstance(project).start();
+        }
+    }
+}
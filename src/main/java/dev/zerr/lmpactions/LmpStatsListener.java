@@ -0,0 +1,23 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.messages.Topic;
+
+// Project-level topic on which finished operations publish their stats, e.g. for the tool window's stats line
+public interface LmpStatsListener {
+
+    Topic<LmpStatsListener> TOPIC = Topic.create("LMP operation stats", LmpStatsListener.class);
+
+    // Called on the thread that finished the operation
+    void operationFinished(String title, LmpStats stats);
+
+    // Finishes the stats, logs the summary and publishes it
+    static void publish(Project project, String title, LmpStats stats) {
+        stats.finish();
+        Logger.getInstance(LmpStatsListener.class).info(title + " " + stats);
+        if (!project.isDisposed()) {
+            project.getMessageBus().syncPublisher(TOPIC).operationFinished(title, stats);
+        }
+    }
+}
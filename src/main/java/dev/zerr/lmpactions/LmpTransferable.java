@@ -0,0 +1,107 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.ThrowableComputable;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.ref.SoftReference;
+import java.util.List;
+
+// Clipboard content rendered when first asked for, through the same streaming path as a copy. An unpasted copy holds
+// only what it renders from, such as the file list; the rendered text is kept softly, so memory pressure drops it and
+// the next paste renders again
+final class LmpTransferable implements Transferable {
+
+    private static final DataFlavor[] FLAVORS = {DataFlavor.stringFlavor};
+
+    private final Project project;
+    private final String title;
+    private final Content content;
+    private SoftReference<String> rendered;
+    private boolean reported;
+
+    LmpTransferable(Project project, String title, Content content) {
+        this.project = project;
+        this.title = title;
+        this.content = content;
+    }
+
+    static LmpTransferable ofSelection(Project project, String title, List<List<LmpSourceFile>> selection,
+                                       String header, String footer) {
+        return new LmpTransferable(project, title, out -> {
+            // Packers are single use; each render starts from the current settings and caches
+            LmpPacker packer = LmpCopySupport.createPacker(project);
+            try {
+                out.write(header);
+                LmpCopySupport.pack(packer, selection, out);
+                out.write(footer);
+                packer.getStats().bufferUsed(out.getCharsWritten());
+            } finally {
+                LmpStatsListener.publish(project, title + " (pasted)", packer.getStats());
+            }
+            return packer.getReport();
+        });
+    }
+
+    @Override
+    public DataFlavor[] getTransferDataFlavors() {
+        return FLAVORS.clone();
+    }
+
+    @Override
+    public boolean isDataFlavorSupported(DataFlavor flavor) {
+        return DataFlavor.stringFlavor.equals(flavor);
+    }
+
+    @Override
+    public synchronized Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException {
+        if (!isDataFlavorSupported(flavor)) {
+            throw new UnsupportedFlavorException(flavor);
+        }
+        String text = rendered != null ? rendered.get() : null;
+        if (text == null) {
+            text = ApplicationManager.getApplication().isDispatchThread() ? renderWithProgress() : render();
+            rendered = new SoftReference<>(text);
+        }
+        return text;
+    }
+
+    // A paste inside the IDE asks on the EDT; the render runs on a pooled thread behind a cancellable modal progress
+    private String renderWithProgress() throws IOException {
+        try {
+            return ProgressManager.getInstance().runProcessWithProgressSynchronously(
+                    (ThrowableComputable<String, IOException>) this::render, "Rendering " + title, true, project);
+        } catch (ProcessCanceledException e) {
+            throw new IOException("Rendering " + title + " was canceled", e);
+        }
+    }
+
+    private String render() throws IOException {
+        if (project.isDisposed()) {
+            throw new IOException("The project of this LMP copy was closed");
+        }
+        StringWriter lmpContent = new StringWriter();
+        LmpPackReport report;
+        try (LmpWriter out = new LmpWriter(lmpContent)) {
+            report = content.writeTo(out);
+        }
+        // Skipped files and budget overruns are only known now; reported once, on the first paste
+        if (!reported && (!report.getSkippedFiles().isEmpty() || report.isBudgetExceeded())) {
+            LmpNotifications.warning(project, title, LmpNotifications.describe(report));
+        }
+        reported = true;
+        return lmpContent.toString();
+    }
+
+    // What a paste renders, written in full and reported on
+    interface Content {
+        LmpPackReport writeTo(LmpWriter out) throws IOException;
+    }
+}
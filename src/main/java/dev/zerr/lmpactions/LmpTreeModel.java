@@ -0,0 +1,279 @@
+package dev.zerr.lmpactions;
+
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import java.util.*;
+
+// File tree over a sorted array of paths; a directory's children are only listed once the tree asks for them,
+// i.e. when it is expanded, and updates are diffed against those listings so expansion state survives
+public class LmpTreeModel implements TreeModel {
+
+    private final Node root;
+    private String[] paths = new String[0];
+    // Children of the directories the tree has looked into, by directory path ("" for the root)
+    private final Map<String, List<Node>> listed = new HashMap<>();
+    private final EventListenerList listeners = new EventListenerList();
+
+    public LmpTreeModel(String rootName) {
+        this.root = new Node("", rootName, false);
+    }
+
+    public void setPaths(Collection<String> newPaths) {
+        String[] sorted = newPaths.toArray(new String[0]);
+        Arrays.sort(sorted);
+        paths = sorted;
+
+        // Parents sort before their subdirectories, so a removed directory is dropped before its listing is visited
+        List<String> directories = new ArrayList<>(listed.keySet());
+        Collections.sort(directories);
+        for (String directory : directories) {
+            List<Node> previous = listed.get(directory);
+            if (previous == null) {
+                continue;
+            }
+            if (!directory.isEmpty() && !hasDirectory(directory)) {
+                forget(directory);
+                continue;
+            }
+            reconcile(directory, previous, listChildren(directory));
+        }
+    }
+
+    public int getFileCount() {
+        return paths.length;
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        return children((Node) parent).get(index);
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        Node node = (Node) parent;
+        return node.file ? 0 : children(node).size();
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        return ((Node) node).file;
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        if (parent == null || child == null || ((Node) parent).file) {
+            return -1;
+        }
+        return Collections.binarySearch(children((Node) parent), (Node) child, Node.ORDER);
+    }
+
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+        // Not editable
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener listener) {
+        listeners.add(TreeModelListener.class, listener);
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener listener) {
+        listeners.remove(TreeModelListener.class, listener);
+    }
+
+    private List<Node> children(Node directory) {
+        return listed.computeIfAbsent(directory.path, this::listChildren);
+    }
+
+    // Direct children of directory: one binary search, then one more per subdirectory to skip its contents
+    private List<Node> listChildren(String directory) {
+        String prefix = directory.isEmpty() ? "" : directory + "/";
+        List<Node> result = new ArrayList<>();
+        int i = lowerBound(prefix);
+        while (i < paths.length && paths[i].startsWith(prefix)) {
+            String path = paths[i];
+            int slash = segmentEnd(path, prefix.length());
+            if (slash < 0) {
+                result.add(new Node(path, path.substring(prefix.length()), true));
+                i++;
+            } else {
+                String subdirectory = path.substring(0, slash);
+                result.add(new Node(subdirectory, path.substring(prefix.length(), slash), false));
+                // '0' follows '/', so this is the first path past subdirectory/
+                i = lowerBound(subdirectory + '0');
+            }
+        }
+        return result;
+    }
+
+    // End of the segment starting at start: the first '/' after at least one other char. Empty segments ("/etc/hosts",
+    // "a//b") join the segment after them, so no directory has an empty path, which would be the root again
+    private static int segmentEnd(String path, int start) {
+        int first = start;
+        while (first < path.length() && path.charAt(first) == '/') {
+            first++;
+        }
+        return first < path.length() ? path.indexOf('/', first) : -1;
+    }
+
+    private boolean hasDirectory(String directory) {
+        int i = lowerBound(directory + '/');
+        return i < paths.length && paths[i].startsWith(directory + '/');
+    }
+
+    private int lowerBound(String key) {
+        int index = Arrays.binarySearch(paths, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void forget(String directory) {
+        String prefix = directory + "/";
+        listed.keySet().removeIf(key -> key.equals(directory) || key.startsWith(prefix));
+    }
+
+    // Both lists are in Node.ORDER: a merge finds removed and inserted nodes, which are fired in that order
+    private void reconcile(String directory, List<Node> previous, List<Node> next) {
+        List<Node> kept = new ArrayList<>();
+        List<Integer> removedIndices = new ArrayList<>();
+        List<Node> removed = new ArrayList<>();
+        List<Integer> insertedIndices = new ArrayList<>();
+        List<Integer> keptFileIndices = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < previous.size() || j < next.size()) {
+            int order = i == previous.size() ? 1 : j == next.size() ? -1 : Node.ORDER.compare(previous.get(i), next.get(j));
+            if (order < 0) {
+                removedIndices.add(i);
+                removed.add(previous.get(i));
+                if (!previous.get(i).file) {
+                    forget(previous.get(i).path);
+                }
+                i++;
+            } else if (order > 0) {
+                insertedIndices.add(j);
+                j++;
+            } else {
+                kept.add(previous.get(i));
+                if (next.get(j).file) {
+                    keptFileIndices.add(j);
+                }
+                i++;
+                j++;
+            }
+        }
+
+        TreePath parentPath = pathTo(directory);
+        if (!removed.isEmpty()) {
+            listed.put(directory, kept);
+            fire(parentPath, removedIndices, removed.toArray(), Kind.REMOVED);
+        }
+        listed.put(directory, next);
+        if (!insertedIndices.isEmpty()) {
+            fire(parentPath, insertedIndices, nodesAt(next, insertedIndices), Kind.INSERTED);
+        }
+        // Kept files may have new content, and with it a new token count
+        if (!keptFileIndices.isEmpty()) {
+            fire(parentPath, keptFileIndices, nodesAt(next, keptFileIndices), Kind.CHANGED);
+        }
+    }
+
+    private TreePath pathTo(String directory) {
+        TreePath path = new TreePath(root);
+        if (directory.isEmpty()) {
+            return path;
+        }
+        int start = 0;
+        while (true) {
+            int slash = segmentEnd(directory, start);
+            String prefix = slash < 0 ? directory : directory.substring(0, slash);
+            path = path.pathByAddingChild(new Node(prefix, prefix.substring(start), false));
+            if (slash < 0) {
+                return path;
+            }
+            start = slash + 1;
+        }
+    }
+
+    private static Object[] nodesAt(List<Node> nodes, List<Integer> indices) {
+        Object[] result = new Object[indices.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = nodes.get(indices.get(k));
+        }
+        return result;
+    }
+
+    private enum Kind {INSERTED, REMOVED, CHANGED}
+
+    private void fire(TreePath parentPath, List<Integer> indices, Object[] nodes, Kind kind) {
+        int[] childIndices = indices.stream().mapToInt(Integer::intValue).toArray();
+        TreeModelEvent event = new TreeModelEvent(this, parentPath, childIndices, nodes);
+        for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+            switch (kind) {
+                case INSERTED:
+                    listener.treeNodesInserted(event);
+                    break;
+                case REMOVED:
+                    listener.treeNodesRemoved(event);
+                    break;
+                case CHANGED:
+                    listener.treeNodesChanged(event);
+                    break;
+            }
+        }
+    }
+
+    // Immutable and compared by path, so tree paths, selection and expansion state carry over between updates
+    public static final class Node {
+        // Files sort by name, directories as name + "/": the same order their paths have in the sorted array
+        static final Comparator<Node> ORDER = Comparator.comparing(Node::sortKey);
+
+        private final String path;
+        private final String name;
+        private final boolean file;
+
+        private Node(String path, String name, boolean file) {
+            this.path = path;
+            this.name = name;
+            this.file = file;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isFile() {
+            return file;
+        }
+
+        private String sortKey() {
+            return file ? name : name + "/";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Node)) return false;
+            Node node = (Node) o;
+            return file == node.file && path.equals(node.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + (file ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package dev.zerr.lmpactions;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.vfs.VFileProperty;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileVisitor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Files as the IDE sees them: open documents with their unsaved changes, then VFS content, which is read from disk only when not cached
+final class LmpVfsSource {
+
+    private LmpVfsSource() {
+    }
+
+    // Must run in a read action; open documents are snapshotted here, the rest is read when packed. Checks for
+    // cancellation at every file
+    static List<LmpSourceFile> listFiles(VirtualFile dir, Path relativeTo, LmpExclusions exclusions) {
+        List<LmpSourceFile> result = new ArrayList<>();
+        if (exclusions != null && exclusions.isExcludedTree(dir.toNioPath())) {
+            return result;
+        }
+        // VFS children are already in memory for anything the project view has shown
+        VfsUtilCore.visitChildrenRecursively(dir, new VirtualFileVisitor<Void>(VirtualFileVisitor.NO_FOLLOW_SYMLINKS) {
+            @Override
+            public boolean visitFile(@NotNull VirtualFile file) {
+                // Lets a non-blocking read action give way to a pending write action
+                ProgressManager.checkCanceled();
+                if (file.isDirectory()) {
+                    // Returning false prunes the excluded subtree
+                    return file.equals(dir) || exclusions == null || !exclusions.isExcludedDirectory(file.toNioPath());
+                }
+                if (!file.is(VFileProperty.SPECIAL) && (exclusions == null || !exclusions.isExcludedFile(file.toNioPath()))) {
+                    result.add(of(file, relativeTo));
+                }
+                return true;
+            }
+        });
+        return result;
+    }
+
+    // Must run in a read action
+    static LmpSourceFile of(VirtualFile file, Path relativeTo) {
+        String relPath = relativeTo != null ? LmpPacker.toLmpPath(relativeTo, file.toNioPath()) : file.getName();
+        return new VfsFile(file, relPath);
+    }
+
+    private static class VfsFile extends LmpSourceFile {
+        private final VirtualFile file;
+        // Snapshot of the open document, unsaved changes included; null when the file has no document loaded
+        private final CharSequence documentText;
+        private final long stamp;
+        // Loaded by classify and released by write, which run on the same thread
+        private byte[] content;
+
+        private VfsFile(VirtualFile file, String relPath) {
+            super(relPath);
+            this.file = file;
+            Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+            this.documentText = document != null ? document.getImmutableCharSequence() : null;
+            this.stamp = document != null ? document.getModificationStamp() : file.getModificationStamp();
+        }
+
+        @Override
+        public String getKey() {
+            return file.getUrl();
+        }
+
+        @Override
+        public long getStamp() {
+            return stamp;
+        }
+
+        @Override
+        public long getSize() {
+            return documentText != null ? documentText.length() : file.getLength();
+        }
+
+        @Override
+        public LmpFileClassifier.Classification classify(LmpFileClassifier classifier) throws IOException {
+            if (documentText != null) {
+                return classifier.classifySize(documentText.length());
+            }
+            LmpFileClassifier.Classification bySize = classifier.classifySize(file.getLength());
+            if (!bySize.isText()) {
+                return bySize;
+            }
+            content = file.contentsToByteArray();
+            return classifier.classify(content);
+        }
+
+        @Override
+        public void write(LmpWriter out, Charset charset, LmpTokenEstimator.Counter counter) throws IOException {
+            if (documentText != null) {
+                out.writeFile(getRelPath(), documentText, counter);
+                return;
+            }
+            byte[] bytes = content != null ? content : file.contentsToByteArray();
+            content = null;
+            // The IDE's charset for the file honours BOMs and encoding settings; the sniffed one is the fallback for non UTF-8 text
+            out.writeFile(getRelPath(), bytes, StandardCharsets.UTF_8.equals(charset) ? file.getCharset() : charset, counter);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package dev.zerr.lmpactions;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LmpTreeModelTest {
+
+    @Test
+    public void leadingSlashAndDoubleSlashPathsAreReachable() {
+        LmpTreeModel model = new LmpTreeModel("root");
+        model.setPaths(List.of("/etc/hosts", "a//b", "a/c", "x"));
+
+        List<String> files = new ArrayList<>();
+        collect(model, (LmpTreeModel.Node) model.getRoot(), files, 0);
+
+        assertEquals(List.of("/etc/hosts", "a//b", "a/c", "x"), files);
+    }
+
+    @Test
+    public void updatesKeepEmptySegmentsOutOfDirectoryPaths() {
+        LmpTreeModel model = new LmpTreeModel("root");
+        model.setPaths(List.of("a/b"));
+        collect(model, (LmpTreeModel.Node) model.getRoot(), new ArrayList<>(), 0);
+        model.setPaths(List.of("a/b", "//twice", "a//b/c"));
+
+        List<String> files = new ArrayList<>();
+        collect(model, (LmpTreeModel.Node) model.getRoot(), files, 0);
+
+        assertEquals(List.of("//twice", "a//b/c", "a/b"), files);
+    }
+
+    // Expands every directory, failing on one that has an empty path or that nests deeper than any path could
+    private static void collect(LmpTreeModel model, LmpTreeModel.Node node, List<String> files, int depth) {
+        assertTrue("runaway nesting at " + node.getPath(), depth < 10);
+        for (int i = 0; i < model.getChildCount(node); i++) {
+            LmpTreeModel.Node child = (LmpTreeModel.Node) model.getChild(node, i);
+            assertEquals(i, model.getIndexOfChild(node, child));
+            if (child.isFile()) {
+                files.add(child.getPath());
+            } else {
+                assertFalse("directory with an empty path", child.getPath().isEmpty());
+                collect(model, child, files, depth + 1);
+            }
+        }
+    }
+}